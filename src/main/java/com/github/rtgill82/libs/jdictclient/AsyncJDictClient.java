@@ -0,0 +1,583 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.github.rtgill82.libs.jdictclient.RequestCoalescer.Loader;
+
+import static com.github.rtgill82.libs.jdictclient.Command.Type.*;
+
+/**
+ * Asynchronous DICT client returning CompletableFutures.
+ * <p>
+ * Each operation borrows a client from a {@link JDictClientPool}, runs on
+ * an Executor and completes its future with the result. Requests are spread
+ * across the pool's connections, so several may be in flight at once.
+ * <p>
+ * On Java 21 or later each operation may instead run on its own virtual
+ * thread (see {@link Builder#useVirtualThreads()}), keeping the blocking
+ * JDictClient underneath while letting very large numbers of lookups wait
+ * for a pooled connection without tying up platform threads.
+ * <p>
+ * With a {@link HedgePolicy} set, a DEFINE or MATCH that is slower than
+ * most recent lookups is sent a second time on another connection, and the
+ * first answer completes the future.
+ * <p>
+ * If the pool has a {@link RequestCoalescer}, a lookup identical to one
+ * still in flight shares its future instead of borrowing a connection or
+ * an Executor thread.
+ * <p>
+ * Authentication is not supported, since pooled connections are shared
+ * between callers.
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class AsyncJDictClient {
+    private final String mHost;
+    private final int mPort;
+    private final JDictClientPool mPool;
+    private final Executor mExecutor;
+    private final boolean mOwnsPool;
+    private final ExecutorService mOwnedExecutor;
+    private final long mDeadline;
+    private final HedgePolicy mHedgePolicy;
+    private final LatencyTracker mLatency;
+    private final ScheduledExecutorService mHedgeTimer;
+
+    /**
+     * Construct a new AsyncJDictClient using the default settings.
+     *
+     * @param host DICT host
+     *
+     */
+    public AsyncJDictClient(String host) {
+        this(new Builder(host));
+    }
+
+    private AsyncJDictClient(Builder builder) {
+        mHost = builder.mHost;
+        mPort = builder.mPort;
+        mOwnsPool = builder.mPool == null;
+        mPool = mOwnsPool ? new JDictClientPool() : builder.mPool;
+
+        if (builder.mExecutor != null) {
+            mOwnedExecutor = null;
+            mExecutor = builder.mExecutor;
+        } else if (builder.mVirtualThreads) {
+            mOwnedExecutor = newVirtualThreadExecutor();
+            mExecutor = mOwnedExecutor;
+        } else {
+            mOwnedExecutor = Executors.newFixedThreadPool(
+                mPool.getMaxConnectionsPerHost(),
+                new DaemonThreadFactory("jdict-client-async-"));
+            mExecutor = mOwnedExecutor;
+        }
+
+        mDeadline = builder.mDeadline;
+        mHedgePolicy = builder.mHedgePolicy;
+        if (mHedgePolicy != null) {
+            mLatency = new LatencyTracker(mHedgePolicy.getPercentile());
+            mHedgeTimer = Executors.newSingleThreadScheduledExecutor(
+                new DaemonThreadFactory("jdict-client-hedge-"));
+        } else {
+            mLatency = null;
+            mHedgeTimer = null;
+        }
+    }
+
+    /**
+     * Release resources held by this client.
+     * <p>
+     * A pool or executor created by this client is closed. A pool or
+     * executor provided to the Builder is left for the caller to close.
+     *
+     */
+    public void close() {
+        if (mHedgeTimer != null)
+          mHedgeTimer.shutdownNow();
+        if (mOwnedExecutor != null)
+          mOwnedExecutor.shutdown();
+        if (mOwnsPool)
+          mPool.close();
+    }
+
+    public String getHost() {
+        return mHost;
+    }
+
+    public int getPort() {
+        return mPort;
+    }
+
+    /**
+     * Get the server information as written by the database administrator.
+     *
+     * @return future completed with the server information string
+     *
+     */
+    public CompletableFuture<String> getServerInfoAsync() {
+        return share(Arrays.asList(SHOW_SERVER),
+                     () -> submit(client -> client.getServerInfo()));
+    }
+
+    /**
+     * Get the server status.
+     *
+     * @return future completed with the server status string
+     *
+     */
+    public CompletableFuture<String> getStatusAsync() {
+        return submit(client -> client.getStatus());
+    }
+
+    /**
+     * Get summary of server commands.
+     *
+     * @return future completed with the server help string
+     *
+     */
+    public CompletableFuture<String> getHelpAsync() {
+        return submit(client -> client.getHelp());
+    }
+
+    /**
+     * Get list of available databases from the server.
+     *
+     * @return future completed with the list of dictionaries
+     *
+     */
+    public CompletableFuture<List<Database>> getDatabasesAsync() {
+        return share(Arrays.asList(SHOW_DATABASES),
+                     () -> submitMetadata(MetadataCache.DATABASES,
+                                          client -> client.getDatabases()));
+    }
+
+    /**
+     * Get detailed database info for the specified database.
+     *
+     * @param database the database for which to get information
+     * @return future completed with the database info string
+     *
+     */
+    public CompletableFuture<String> getDatabaseInfoAsync(String database) {
+        return share(Arrays.asList(SHOW_INFO, database),
+            () -> submitMetadata(MetadataCache.info(database),
+                client -> client.getDatabaseInfo(database)));
+    }
+
+    /**
+     * Get detailed database info for the specified database.
+     *
+     * @param database the database for which to get information
+     * @return future completed with the database info string
+     *
+     */
+    public CompletableFuture<String> getDatabaseInfoAsync(Database database) {
+        return getDatabaseInfoAsync(database.getName());
+    }
+
+    /**
+     * Get list of available match strategies from the server.
+     *
+     * @return future completed with the list of strategies
+     *
+     */
+    public CompletableFuture<List<Strategy>> getStrategiesAsync() {
+        return share(Arrays.asList(SHOW_STRATEGIES),
+                     () -> submitMetadata(MetadataCache.STRATEGIES,
+                                          client -> client.getStrategies()));
+    }
+
+    /**
+     * Get definition for word from DICT server.
+     *
+     * @param word the word to define
+     * @return future completed with a list of definitions for word or null
+     *         if no word found
+     *
+     */
+    public CompletableFuture<List<Definition>> defineAsync(String word) {
+        return defineAsync(word, null);
+    }
+
+    /**
+     * Get definition for word from DICT server.
+     *
+     * @param word the word to define
+     * @param database the database in which to find the definition
+     * @return future completed with a list of definitions for word or null
+     *         if no word found
+     *
+     */
+    public CompletableFuture<List<Definition>> defineAsync(String word,
+                                                           String database) {
+        return share(Arrays.asList(DEFINE, word, database),
+                     () -> hedge(client -> client.define(word, database)));
+    }
+
+    /**
+     * Match word using requested strategy.
+     *
+     * @param word the word to match
+     * @param strategy the strategy to use for matching
+     * @return future completed with a list of matching words and the
+     *         dictionaries they are found in
+     *
+     */
+    public CompletableFuture<List<Match>> matchAsync(String word,
+                                                     String strategy) {
+        return matchAsync(word, strategy, null);
+    }
+
+    /**
+     * Match word using requested strategy.
+     *
+     * @param word the word to match
+     * @param strategy the strategy to use for matching
+     * @param database the database to search
+     * @return future completed with a list of matching words and the
+     *         dictionaries they are found in or null if no matches found
+     *
+     */
+    public CompletableFuture<List<Match>> matchAsync(String word,
+                                                     String strategy,
+                                                     String database) {
+        return share(Arrays.asList(MATCH, word, strategy, database),
+            () -> hedge(client -> client.match(word, strategy, database)));
+    }
+
+    /**
+     * Run an arbitrary operation with a pooled client.
+     *
+     * @param operation the operation to perform
+     * @return future completed with the result of the operation
+     *
+     */
+    public <T> CompletableFuture<T> submit(ClientOperation<T> operation) {
+        return run(() -> mPool.execute(mHost, mPort,
+                                       withDeadline(operation)));
+    }
+
+    /**
+     * Run an operation that loads a MetadataCache result, checking the
+     * pool's cache before a client is borrowed.
+     *
+     */
+    private <T> CompletableFuture<T> submitMetadata(String name,
+          ClientOperation<T> operation) {
+        return run(() -> mPool.executeMetadata(mHost, mPort, name,
+                                               withDeadline(operation)));
+    }
+
+    /**
+     * Run a task on the executor.
+     *
+     */
+    private <T> CompletableFuture<T> run(Loader<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            mExecutor.execute(() -> {
+                try {
+                    future.complete(task.load());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Start a request, or share an identical request already in flight if
+     * the pool has a RequestCoalescer.
+     *
+     */
+    private <T> CompletableFuture<T> share(List<?> request,
+          Supplier<CompletableFuture<T>> start) {
+        RequestCoalescer coalescer = mPool.getRequestCoalescer();
+        if (coalescer == null)
+          return start.get();
+        return coalescer.executeAsync(
+            RequestCoalescer.key(mHost, mPort, request), mHost, start);
+    }
+
+    /**
+     * Apply the client deadline to each command sent by an operation.
+     *
+     */
+    private <T> ClientOperation<T> withDeadline(ClientOperation<T> operation) {
+        if (mDeadline <= 0)
+          return operation;
+
+        return client -> {
+            long previous = client.getDeadline();
+            client.setDeadline(mDeadline);
+            try {
+                return operation.execute(client);
+            } finally {
+                client.setDeadline(previous);
+            }
+        };
+    }
+
+    /**
+     * Submit a lookup, sending it a second time if the first attempt is
+     * slower than the hedge policy allows.
+     * <p>
+     * The slower attempt is left to finish reading its response, so its
+     * connection returns to the pool in a usable state.
+     *
+     */
+    private <T> CompletableFuture<T> hedge(ClientOperation<T> operation) {
+        if (mHedgePolicy == null)
+          return submit(operation);
+
+        Hedge<T> hedge = new Hedge<>(operation);
+        hedge.start();
+
+        long delay = mLatency.getPercentile();
+        if (delay >= 0) {
+            delay = Math.max(delay,
+                TimeUnit.MILLISECONDS.toNanos(mHedgePolicy.getMinDelay()));
+            try {
+                ScheduledFuture<?> timer = mHedgeTimer.schedule(
+                    hedge::retry, delay, TimeUnit.NANOSECONDS);
+                hedge.mResult.whenComplete((result, e) -> timer.cancel(false));
+            } catch (RejectedExecutionException e) {
+                /* The client has been closed; let the first attempt finish. */
+            }
+        }
+        return hedge.mResult;
+    }
+
+    /**
+     * Create an Executor that starts a new virtual thread for each task.
+     * <p>
+     * The library is built for older Java versions, so the Java 21 factory
+     * method is looked up at runtime.
+     *
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method method =
+              Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException
+                 | InvocationTargetException e) {
+            throw new UnsupportedOperationException(
+                "Virtual threads require Java 21 or later.", e);
+        }
+    }
+
+    /**
+     * One or two attempts at the same lookup sharing a single result.
+     *
+     */
+    private class Hedge<T> {
+        private final ClientOperation<T> mOperation;
+        private final CompletableFuture<T> mResult = new CompletableFuture<>();
+
+        /** Number of attempts that have not yet finished. */
+        private final AtomicInteger mRunning = new AtomicInteger();
+
+        Hedge(ClientOperation<T> operation) {
+            mOperation = operation;
+        }
+
+        void start() {
+            mRunning.incrementAndGet();
+            long start = System.nanoTime();
+            submit(mOperation).whenComplete((result, e) -> {
+                if (e == null) {
+                    mLatency.record(System.nanoTime() - start);
+                    mResult.complete(result);
+                } else if (mRunning.decrementAndGet() == 0) {
+                    mResult.completeExceptionally(e);
+                }
+            });
+        }
+
+        void retry() {
+            if (!mResult.isDone())
+              start();
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String mPrefix;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        DaemonThreadFactory(String prefix) {
+            mPrefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable,
+                mPrefix + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Constructs and initializes an instance of AsyncJDictClient.
+     *
+     */
+    public static class Builder {
+        private final String mHost;
+        private int mPort = Connection.DEFAULT_PORT;
+        private JDictClientPool mPool;
+        private Executor mExecutor;
+        private boolean mVirtualThreads;
+        private long mDeadline;
+        private HedgePolicy mHedgePolicy;
+
+        /**
+         * Construct a new AsyncJDictClient.Builder.
+         *
+         * @param host DICT host
+         *
+         */
+        public Builder(String host) {
+            mHost = host;
+        }
+
+        /**
+         * Set the port to connect to.
+         *
+         * @param port port number
+         * @return the client builder in progress
+         *
+         */
+        public Builder setPort(int port) {
+            mPort = port;
+            return this;
+        }
+
+        /**
+         * Set the pool to borrow clients from.
+         * <p>
+         * If no pool is set, the client creates its own.
+         *
+         * @param pool the pool to borrow clients from
+         * @return the client builder in progress
+         *
+         */
+        public Builder setPool(JDictClientPool pool) {
+            mPool = pool;
+            return this;
+        }
+
+        /**
+         * Set the Executor that runs each operation.
+         * <p>
+         * If no Executor is set, the client creates a fixed thread pool with
+         * one thread per pooled connection.
+         *
+         * @param executor the Executor that runs each operation
+         * @return the client builder in progress
+         *
+         */
+        public Builder setExecutor(Executor executor) {
+            mExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Run each operation on its own virtual thread.
+         * <p>
+         * Operations still wait for a pooled connection, so the pool's
+         * connection limit and maximum wait time should be sized for the
+         * expected number of concurrent lookups. Ignored if an Executor has
+         * been set.
+         *
+         * @throws UnsupportedOperationException from build() when running
+         *         on a Java version without virtual threads
+         * @return the client builder in progress
+         *
+         */
+        public Builder useVirtualThreads() {
+            mVirtualThreads = true;
+            return this;
+        }
+
+        /**
+         * Set the time allowed to read the response to each command.
+         * <p>
+         * When a deadline expires the pooled connection is closed and the
+         * future completes with a DictTimeoutException.
+         *
+         * @param deadline time allowed in milliseconds, or 0 for no limit
+         * @return the client builder in progress
+         *
+         */
+        public Builder setDeadline(long deadline) {
+            mDeadline = deadline;
+            return this;
+        }
+
+        /**
+         * Set the policy used to send a second copy of slow DEFINE and
+         * MATCH lookups.
+         * <p>
+         * Hedged lookups may use two pooled connections at once, so the
+         * pool should allow more connections than the expected number of
+         * concurrent lookups.
+         *
+         * @param policy the hedge policy or null to disable hedging
+         * @return the client builder in progress
+         *
+         */
+        public Builder setHedgePolicy(HedgePolicy policy) {
+            mHedgePolicy = policy;
+            return this;
+        }
+
+        /**
+         * Return the built AsyncJDictClient instance.
+         *
+         * @return the AsyncJDictClient instance that was built
+         *
+         */
+        public AsyncJDictClient build() {
+            return new AsyncJDictClient(this);
+        }
+    }
+}
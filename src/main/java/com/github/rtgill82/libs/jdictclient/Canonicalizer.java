@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares the database and strategy names seen on a connection.
+ * <p>
+ * A server offers only a few dozen databases and strategies, but their
+ * names are repeated in every MATCH result and definition. Returning the
+ * same String and Database instances for each repetition keeps large
+ * results and cached lookups small. The table is bounded so that a server
+ * sending unexpected names cannot make it grow without limit; once it is
+ * full, new names are returned as they are.
+ * <p>
+ * Responses may be decoded on any thread, so the table is thread safe.
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+final class Canonicalizer {
+    /** The default maximum number of entries in each table. */
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private final int mCapacity;
+    private final ConcurrentHashMap<String, String> mStrings =
+      new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Database> mDatabases =
+      new ConcurrentHashMap<>();
+
+    Canonicalizer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    Canonicalizer(int capacity) {
+        mCapacity = capacity;
+    }
+
+    /**
+     * Get the shared instance of a string.
+     *
+     * @param text the string to share
+     * @return an equal string already in the table, or text itself
+     *
+     */
+    String canonical(String text) {
+        if (text == null)
+          return null;
+
+        String canonical = mStrings.get(text);
+        if (canonical != null)
+          return canonical;
+        if (mStrings.size() >= mCapacity)
+          return text;
+
+        canonical = mStrings.putIfAbsent(text, text);
+        return canonical != null ? canonical : text;
+    }
+
+    /**
+     * Get the shared Database with a name and description.
+     *
+     * @param name the database name
+     * @param description the database description
+     * @return an equal Database already in the table, or a new Database
+     *
+     */
+    Database database(String name, String description) {
+        Database database = mDatabases.get(name);
+        if (database != null
+            && Objects.equals(database.getDescription(), description))
+          return database;
+
+        Database created =
+          new Database(canonical(name), canonical(description));
+        if (database != null || mDatabases.size() >= mCapacity)
+          return created;
+
+        database = mDatabases.putIfAbsent(created.getName(), created);
+        return database != null && database.equals(created) ? database
+          : created;
+    }
+}
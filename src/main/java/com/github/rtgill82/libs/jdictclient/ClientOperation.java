@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.io.IOException;
+
+/**
+ * An operation performed with a borrowed JDictClient.
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public interface ClientOperation<T> {
+    T execute(JDictClient client) throws IOException;
+}
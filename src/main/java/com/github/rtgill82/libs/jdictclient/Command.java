@@ -21,11 +21,12 @@
 package com.github.rtgill82.libs.jdictclient;
 
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
 
@@ -42,6 +43,8 @@ public class Command {
         CLIENT,
         /** Get remote host server information. */
         SHOW_SERVER,
+        /** Get remote host status information. */
+        STATUS,
         /** Get help on available commands from remote host. */
         HELP,
         /** Authenticate with remote host. */
@@ -62,13 +65,32 @@ public class Command {
         OTHER
     }
 
+    /** Encoded command lines for the commands without parameters. */
+    private static final byte[] SHOW_SERVER_LINE =
+      CommandEncoder.encodeLine("SHOW SERVER");
+    private static final byte[] STATUS_LINE =
+      CommandEncoder.encodeLine("STATUS");
+    private static final byte[] HELP_LINE =
+      CommandEncoder.encodeLine("HELP");
+    private static final byte[] SHOW_DATABASES_LINE =
+      CommandEncoder.encodeLine("SHOW DATABASES");
+    private static final byte[] SHOW_STRATEGIES_LINE =
+      CommandEncoder.encodeLine("SHOW STRATEGIES");
+    private static final byte[] QUIT_LINE =
+      CommandEncoder.encodeLine("QUIT");
+
     private final Type type;
     private String param;
     private String database;
     private String strategy;
     private String command;
     private int numCommands;
+    private long deadline;
     private ResponseHandler handler;
+    private Consumer<? super Element> elementConsumer;
+    private HeaderHandler headerHandler;
+    private boolean retainRawData = true;
+    private boolean compactMatches;
 
     private String username;
     private String secret;
@@ -82,92 +104,446 @@ public class Command {
     }
 
     public List<Response> execute(Connection connection) throws IOException {
-        PrintWriter out = connection.getOutputWriter();
+        CommandEncoder encoder = connection.getCommandEncoder();
+        encode(encoder, connection.getId());
+        encoder.flush();
+        return readResponses(connection);
+    }
+
+    public void setResponseHandler(ResponseHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Encode the command line sent to the server for this Command,
+     * terminated by CRLF, without flushing.
+     *
+     * @param encoder the encoder to write the command to
+     * @param connectionId the connection ID from the server banner, used to
+     *        digest the AUTH secret
+     *
+     */
+    void encode(CommandEncoder encoder, String connectionId) {
         switch(type) {
           case CLIENT:
-            out.println("CLIENT " + param);
+            encoder.append("CLIENT ");
+            encoder.append(param);
             break;
 
           case SHOW_SERVER:
-            out.println("SHOW SERVER");
-            break;
+            encoder.write(SHOW_SERVER_LINE);
+            return;
+
+          case STATUS:
+            encoder.write(STATUS_LINE);
+            return;
 
           case HELP:
-            out.println("HELP");
-            break;
+            encoder.write(HELP_LINE);
+            return;
 
           case AUTH:
-            out.println("AUTH " + username + " " +
-                                  digest_secret(connection, secret));
+            encoder.append("AUTH ");
+            encoder.appendAtom(username);
+            encoder.append(" ");
+            encoder.append(digest_secret(connectionId, secret));
             break;
 
           case SHOW_DATABASES:
-            out.println("SHOW DATABASES");
-            break;
+            encoder.write(SHOW_DATABASES_LINE);
+            return;
 
           case SHOW_INFO:
-            out.println("SHOW INFO " + database);
+            encoder.append("SHOW INFO ");
+            encoder.appendAtom(database);
             break;
 
           case SHOW_STRATEGIES:
-            out.println("SHOW STRATEGIES");
-            break;
+            encoder.write(SHOW_STRATEGIES_LINE);
+            return;
 
           case DEFINE:
-            out.println("DEFINE " + database + " \"" + param + "\"");
+            encoder.append("DEFINE ");
+            encoder.appendAtom(database);
+            encoder.append(" ");
+            encoder.appendQuoted(param);
             break;
 
           case MATCH:
-            out.println("MATCH " + database + " " +
-                                   strategy + " \"" + param + "\"");
+            encoder.append("MATCH ");
+            encoder.appendAtom(database);
+            encoder.append(" ");
+            encoder.appendAtom(strategy);
+            encoder.append(" ");
+            encoder.appendQuoted(param);
             break;
 
           case QUIT:
-            out.println("QUIT");
-            break;
+            encoder.write(QUIT_LINE);
+            return;
 
           case OTHER:
-            out.println(command);
-            break;
+            encoder.appendLines(command);
+            return;
 
           default:
             throw new RuntimeException("Invalid command type: " + type);
         }
+        encoder.endLine();
+    }
 
-        return readResponses(connection);
+    /**
+     * Check whether this Command can safely be sent again.
+     * <p>
+     * Commands that only query the server may be repeated after a lost
+     * connection without changing the outcome, unless their Elements have
+     * already been streamed to a consumer.
+     *
+     * @return true if the command may be retried
+     *
+     */
+    boolean isIdempotent() {
+        if (elementConsumer != null || headerHandler != null)
+          return false;
+
+        switch (type) {
+          case SHOW_SERVER:
+          case STATUS:
+          case HELP:
+          case SHOW_DATABASES:
+          case SHOW_INFO:
+          case SHOW_STRATEGIES:
+          case DEFINE:
+          case MATCH:
+            return true;
+
+          default:
+            return false;
+        }
     }
 
-    public void setResponseHandler(ResponseHandler handler) {
-        this.handler = handler;
+    /**
+     * Get the number of commands sent by this Command.
+     * <p>
+     * This is always one, except for raw OTHER commands containing several
+     * lines.
+     *
+     * @return the number of commands sent
+     *
+     */
+    int getNumCommands() {
+        return numCommands;
+    }
+
+    /**
+     * Get the time allowed to read the responses to this Command.
+     *
+     * @return time allowed in milliseconds, or 0 for no limit
+     *
+     */
+    long getDeadline() {
+        return deadline;
     }
 
-    private String digest_secret(Connection connection, String secret) {
+    private String digest_secret(String connectionId, String secret) {
         try {
             MessageDigest authDigest = MessageDigest.getInstance("MD5");
-            String authString = connection.getId() + secret;
+            String authString = connectionId + secret;
             return new HexBinaryAdapter()
-              .marshal(authDigest.digest(authString.getBytes()));
+              .marshal(authDigest.digest(
+                authString.getBytes(StandardCharsets.UTF_8)));
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Read the responses to this Command from a connection.
+     * <p>
+     * If the stream a header handler chose for a body fails part way
+     * through, the rest of the body cannot be found again, so the
+     * connection is closed before the exception is rethrown.
+     *
+     */
     private List<Response> readResponses(Connection connection)
           throws IOException {
-        ResponseParser responseParser =
-          new ResponseParser(connection, numCommands);
-        LinkedList<Response> responses = new LinkedList<>();
+        long previous = connection.getDeadline();
+        connection.setDeadline(connection.deadlineAfter(deadline));
+        ResponseParser parser = connection.getResponseParser(numCommands);
+        try {
+            return readResponses(parser);
+        } catch (IOException | RuntimeException e) {
+            if (parser.isOutputFailed()) {
+                try {
+                    connection.close();
+                } catch (IOException closeError) {
+                    e.addSuppressed(closeError);
+                }
+            }
+            throw e;
+        } finally {
+            connection.setDeadline(previous);
+        }
+    }
+
+    /**
+     * Read the responses to this Command from a parser, passing each one to
+     * the ResponseHandler.
+     * <p>
+     * If the ResponseHandler, element consumer or header handler throws an
+     * exception, the remaining responses are read and discarded before it
+     * is rethrown, so the connection can still be used.
+     *
+     * @param responseParser the parser to read responses from
+     * @throws IOException from the parser or ResponseHandler
+     * @return List of Responses kept by the ResponseHandler
+     *
+     */
+    List<Response> readResponses(ResponseParser responseParser)
+          throws IOException {
+        List<Response> responses = new ArrayList<>(numCommands + 1);
+        responseParser.setElementConsumer(elementConsumer);
+        responseParser.setHeaderHandler(headerHandler);
+        responseParser.setRetainRawData(retainRawData);
+        responseParser.setCompactMatches(compactMatches);
         while (responseParser.hasNext()) {
-            boolean rv = true;
-            Response response = responseParser.parse();
-            if (handler != null)
-              rv = handler.handle(response);
-            if (rv)
-              responses.add(response);
+            Response response;
+            try {
+                response = responseParser.parse();
+            } catch (IOException | RuntimeException e) {
+                if (responseParser.isCallbackFailed())
+                  skipRemaining(responseParser, e);
+                throw e;
+            }
+            if (responseParser.isDiscarded())
+              continue;
+
+            try {
+                if (handler == null || handler.handle(response))
+                  responses.add(response);
+            } catch (DictException | RuntimeException e) {
+                skipRemaining(responseParser, e);
+                throw e;
+            }
         }
         return responses;
     }
 
+    /**
+     * Read and discard the remaining responses after a consumer or handler
+     * has failed. A failure while reading them is added to the original
+     * exception as a suppressed exception.
+     *
+     */
+    private static void skipRemaining(ResponseParser responseParser,
+                                      Exception failure) {
+        responseParser.setElementConsumer(null);
+        responseParser.setHeaderHandler(null);
+        try {
+            while (responseParser.hasNext())
+              responseParser.parse();
+        } catch (IOException | RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * A batch of Commands sent without waiting for each response.
+     * <p>
+     * The DICT protocol allows a client to send several commands before
+     * reading the responses, which are returned in the order the commands
+     * were sent. A Batch writes up to its depth of commands in a single
+     * flush, then keeps the pipeline topped up as responses arrive.
+     *
+     */
+    public static class Batch {
+        /** The default maximum number of commands awaiting a response. */
+        public static final int DEFAULT_DEPTH = 32;
+
+        private final List<Command> mCommands = new ArrayList<>();
+        private int mDepth = DEFAULT_DEPTH;
+        private long mDeadline;
+
+        /**
+         * Add a Command to the batch.
+         *
+         * @param command the Command to add
+         * @return the batch in progress
+         *
+         */
+        public Batch add(Command command) {
+            mCommands.add(command);
+            return this;
+        }
+
+        /**
+         * Set the maximum number of commands awaiting a response.
+         *
+         * @param depth the pipeline depth
+         * @return the batch in progress
+         *
+         */
+        public Batch setDepth(int depth) {
+            if (depth < 1)
+              throw new RuntimeException(
+                  "Pipeline depth must be at least 1."
+                );
+
+            mDepth = depth;
+            return this;
+        }
+
+        /**
+         * Set the time allowed to read the responses to the whole batch.
+         * <p>
+         * Deadlines set on individual Commands still apply while reading
+         * their own responses.
+         *
+         * @param deadline time allowed in milliseconds, or 0 for no limit
+         * @return the batch in progress
+         *
+         */
+        public Batch setDeadline(long deadline) {
+            mDeadline = deadline;
+            return this;
+        }
+
+        /**
+         * Check whether every Command in the batch can safely be sent
+         * again.
+         *
+         * @return true if the batch may be retried
+         *
+         */
+        boolean isIdempotent() {
+            for (Command command : mCommands) {
+                if (!command.isIdempotent())
+                  return false;
+            }
+            return true;
+        }
+
+        /**
+         * Get the number of Commands in the batch.
+         *
+         * @return the number of Commands
+         *
+         */
+        public int size() {
+            return mCommands.size();
+        }
+
+        /**
+         * Send every Command in the batch and read their responses.
+         * <p>
+         * If a ResponseHandler, element consumer or header handler throws
+         * an exception, no further commands are sent and the responses to
+         * commands already sent are read and discarded before the exception
+         * is rethrown, leaving the connection ready for use. If a malformed
+         * response is received the connection is closed instead.
+         * <p>
+         * If a deadline expires the connection is closed and a
+         * DictTimeoutException is thrown.
+         *
+         * @param connection the connection to send the commands on
+         * @throws IOException from associated Socket or a ResponseHandler
+         * @return a List of Responses for each Command, in the same order
+         *
+         */
+        public List<List<Response>> execute(Connection connection)
+              throws IOException {
+            long previous = connection.getDeadline();
+            connection.setDeadline(connection.deadlineAfter(mDeadline));
+            try {
+                return executePipelined(connection);
+            } finally {
+                connection.setDeadline(previous);
+            }
+        }
+
+        private List<List<Response>> executePipelined(Connection connection)
+              throws IOException {
+            CommandEncoder encoder = connection.getCommandEncoder();
+            int count = mCommands.size();
+            List<List<Response>> results = new ArrayList<>(count);
+
+            int written = fill(encoder, connection, 0, 0);
+            for (int read = 0; read < count; read++) {
+                Command command = mCommands.get(read);
+                try {
+                    results.add(command.readResponses(connection));
+                } catch (DictException | RuntimeException e) {
+                    recover(connection, e, read + 1, written);
+                    throw e;
+                }
+
+                int waiting = written - read - 1;
+                if (written < count && waiting <= mDepth / 2)
+                  written = fill(encoder, connection, written, read + 1);
+            }
+            return results;
+        }
+
+        /**
+         * Write commands until the pipeline is full, then flush once.
+         *
+         * @return the number of commands written so far
+         *
+         */
+        private int fill(CommandEncoder encoder, Connection connection,
+                         int written, int read) throws IOException {
+            int count = mCommands.size();
+            String connectionId = connection.getId();
+            boolean autoFlush = connection.getConfig().getAutoFlush();
+            while (written < count && written - read < mDepth) {
+                mCommands.get(written).encode(encoder, connectionId);
+                if (autoFlush)
+                  encoder.flush();
+                written += 1;
+            }
+            encoder.flush();
+            return written;
+        }
+
+        /**
+         * Read and discard the responses to commands already sent after a
+         * command has failed, so the connection can still be used.
+         * <p>
+         * Nothing is drained once the connection has been closed. After a
+         * malformed response the stream can no longer be followed, so the
+         * connection is closed instead. A failure while draining is added
+         * to the original exception as a suppressed exception rather than
+         * replacing it.
+         *
+         */
+        private void recover(Connection connection, Exception failure,
+                             int from, int to) {
+            try {
+                if (connection.isClosed())
+                  return;
+                if (failure instanceof DictException
+                    && ((DictException) failure).getStatus() == null) {
+                    connection.close();
+                    return;
+                }
+                drain(connection, from, to);
+            } catch (IOException | RuntimeException e) {
+                failure.addSuppressed(e);
+            }
+        }
+
+        private void drain(Connection connection, int from, int to)
+              throws IOException {
+            for (int i = from; i < to; i++) {
+                int numCommands = mCommands.get(i).getNumCommands();
+                ResponseParser parser =
+                  connection.getResponseParser(numCommands);
+                while (parser.hasNext())
+                  parser.parse();
+            }
+        }
+    }
+
     /**
      * Constructs and initializes an instance of Command.
      *
@@ -309,6 +685,89 @@ public class Command {
             return this;
         }
 
+        /**
+         * Stream the Elements listed in the response to a consumer instead
+         * of collecting them into the Response.
+         * <p>
+         * Each Element is passed to the consumer as soon as its line has
+         * been read. Commands with a consumer are never retried after a
+         * lost connection, since Elements already consumed cannot be taken
+         * back.
+         *
+         * @param consumer the consumer of each listed Element
+         * @return the command builder in progress
+         *
+         */
+        public Builder setElementConsumer(
+              Consumer<? super Element> consumer) {
+            mCommand.elementConsumer = consumer;
+            return this;
+        }
+
+        /**
+         * Set the handler that decides whether each response body is kept,
+         * discarded or copied to a stream before the body is read.
+         * <p>
+         * Discarded responses are not passed to the ResponseHandler or
+         * returned. See {@link ResponseParser#setHeaderHandler}. Commands
+         * with a header handler are never retried after a lost connection.
+         *
+         * @param handler the handler for response headers
+         * @return the command builder in progress
+         *
+         */
+        public Builder setHeaderHandler(HeaderHandler handler) {
+            mCommand.headerHandler = handler;
+            return this;
+        }
+
+        /**
+         * Set whether the Responses keep their raw text once their typed
+         * data has been decoded.
+         * <p>
+         * See {@link ResponseParser#setRetainRawData(boolean)}.
+         *
+         * @param retainRawData false to release the raw text when the
+         *        typed data is first requested
+         * @return the command builder in progress
+         *
+         */
+        public Builder setRetainRawData(boolean retainRawData) {
+            mCommand.retainRawData = retainRawData;
+            return this;
+        }
+
+        /**
+         * Set whether MATCH results are decoded into a compact MatchList.
+         * <p>
+         * See {@link ResponseParser#setCompactMatches(boolean)}.
+         *
+         * @param compactMatches true to decode MATCH results into a
+         *        MatchList
+         * @return the command builder in progress
+         *
+         */
+        public Builder setCompactMatches(boolean compactMatches) {
+            mCommand.compactMatches = compactMatches;
+            return this;
+        }
+
+        /**
+         * Set the time allowed to read the responses to the Command.
+         * <p>
+         * The deadline starts once the command has been sent. If it expires
+         * before every response has been read, the connection is closed and
+         * a DictTimeoutException is thrown.
+         *
+         * @param deadline time allowed in milliseconds, or 0 for no limit
+         * @return the command builder in progress
+         *
+         */
+        public Builder setDeadline(long deadline) {
+            mCommand.deadline = deadline;
+            return this;
+        }
+
         /**
          * Return the built Command instance.
          *
@@ -334,8 +793,8 @@ public class Command {
                 throw new RuntimeException(
                             "MATCH command requires a parameter."
                           );
-            } else if (mCommand.type == Type.AUTH && mCommand.username == null
-                       && mCommand.secret == null) {
+            } else if (mCommand.type == Type.AUTH && (mCommand.username == null
+                       || mCommand.secret == null)) {
                 throw new RuntimeException(
                             "AUTH command requires a username and password."
                           );
@@ -349,8 +808,20 @@ public class Command {
                 throw new RuntimeException(
                             "OTHER command requires a raw command string."
                           );
+            } else if (hasLineBreak(mCommand.param)
+                       || hasLineBreak(mCommand.database)
+                       || hasLineBreak(mCommand.strategy)
+                       || hasLineBreak(mCommand.username)) {
+                throw new RuntimeException(
+                            "Command parameters may not contain line breaks."
+                          );
             }
             return mCommand;
         }
+
+        private static boolean hasLineBreak(String text) {
+            return text != null
+                   && (text.indexOf('\r') >= 0 || text.indexOf('\n') >= 0);
+        }
     }
 }
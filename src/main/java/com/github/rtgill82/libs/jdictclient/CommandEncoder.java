@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Encodes command lines as CRLF terminated UTF-8 bytes.
+ * <p>
+ * Commands are encoded into a single reusable byte array and written to
+ * the stream in one call when flushed, so a pipelined batch costs one
+ * write rather than one per command. Words are quoted as described by
+ * RFC 2229, with quotes and backslashes escaped by a backslash.
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+class CommandEncoder {
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final byte QUOTE = '"';
+    private static final byte BACKSLASH = '\\';
+
+    private final OutputStream mOut;
+
+    private byte[] mBuffer = new byte[256];
+    private int mLength;
+
+    /**
+     * Construct a new CommandEncoder writing to a stream.
+     *
+     * @param out the stream to write commands to
+     *
+     */
+    CommandEncoder(OutputStream out) {
+        mOut = out;
+    }
+
+    /**
+     * Construct a new CommandEncoder collecting commands in memory, to be
+     * retrieved by toByteArray().
+     *
+     */
+    CommandEncoder() {
+        this(null);
+    }
+
+    /**
+     * Encode a complete command line, including its line terminator.
+     *
+     * @param line the command line
+     * @return the encoded bytes
+     *
+     */
+    static byte[] encodeLine(String line) {
+        return (line + "\r\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Append bytes that have already been encoded.
+     *
+     * @param bytes the encoded bytes
+     *
+     */
+    void write(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, mBuffer, mLength, bytes.length);
+        mLength += bytes.length;
+    }
+
+    /**
+     * Append text as it is.
+     *
+     * @param text the text to append
+     *
+     */
+    void append(String text) {
+        appendUtf8(text, 0, text.length(), false);
+    }
+
+    /**
+     * Append text, quoting it if it is empty or contains spaces, quotes
+     * or backslashes. Used for database and strategy names.
+     *
+     * @param text the text to append
+     *
+     */
+    void appendAtom(String text) {
+        if (needsQuotes(text))
+          appendQuoted(text);
+        else
+          appendUtf8(text, 0, text.length(), false);
+    }
+
+    /**
+     * Append text enclosed in double quotes.
+     *
+     * @param text the text to append
+     *
+     */
+    void appendQuoted(String text) {
+        ensureCapacity(1);
+        mBuffer[mLength++] = QUOTE;
+        appendUtf8(text, 0, text.length(), true);
+        ensureCapacity(1);
+        mBuffer[mLength++] = QUOTE;
+    }
+
+    /**
+     * Append text that may contain several lines, terminating each line
+     * with CRLF regardless of its original line break.
+     *
+     * @param text the lines to append
+     *
+     */
+    void appendLines(String text) {
+        int start = 0;
+        int length = text.length();
+        while (start <= length) {
+            int end = start;
+            while (end < length && text.charAt(end) != '\r'
+                   && text.charAt(end) != '\n')
+              end += 1;
+
+            appendUtf8(text, start, end, false);
+            endLine();
+            if (end < length - 1 && text.charAt(end) == '\r'
+                && text.charAt(end + 1) == '\n')
+              end += 1;
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Terminate the current line with CRLF.
+     *
+     */
+    void endLine() {
+        ensureCapacity(2);
+        mBuffer[mLength++] = CR;
+        mBuffer[mLength++] = LF;
+    }
+
+    /**
+     * Write every encoded command to the stream in a single call and
+     * flush it.
+     *
+     * @throws IOException from the underlying stream
+     *
+     */
+    void flush() throws IOException {
+        if (mLength > 0)
+          mOut.write(mBuffer, 0, mLength);
+        mOut.flush();
+        mLength = 0;
+    }
+
+    /**
+     * Get the encoded commands and clear the buffer.
+     *
+     * @return the encoded bytes
+     *
+     */
+    byte[] toByteArray() {
+        byte[] bytes = Arrays.copyOf(mBuffer, mLength);
+        mLength = 0;
+        return bytes;
+    }
+
+    private static boolean needsQuotes(String text) {
+        if (text.isEmpty())
+          return true;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c <= ' ' || c == '"' || c == '\'' || c == '\\')
+              return true;
+        }
+        return false;
+    }
+
+    private void appendUtf8(String text, int start, int end,
+                            boolean escape) {
+        ensureCapacity(end - start);
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                ensureCapacity(2);
+                if (escape && (c == '"' || c == '\\'))
+                  mBuffer[mLength++] = BACKSLASH;
+                mBuffer[mLength++] = (byte) c;
+            } else if (c < 0x800) {
+                ensureCapacity(2);
+                mBuffer[mLength++] = (byte) (0xc0 | (c >> 6));
+                mBuffer[mLength++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end
+                       && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                ensureCapacity(4);
+                mBuffer[mLength++] = (byte) (0xf0 | (cp >> 18));
+                mBuffer[mLength++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                mBuffer[mLength++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                mBuffer[mLength++] = (byte) (0x80 | (cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                ensureCapacity(1);
+                mBuffer[mLength++] = '?';
+            } else {
+                ensureCapacity(3);
+                mBuffer[mLength++] = (byte) (0xe0 | (c >> 12));
+                mBuffer[mLength++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                mBuffer[mLength++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private void ensureCapacity(int count) {
+        if (mLength + count > mBuffer.length) {
+            mBuffer = Arrays.copyOf(mBuffer,
+                                    Math.max(mBuffer.length * 2,
+                                             mLength + count));
+        }
+    }
+}
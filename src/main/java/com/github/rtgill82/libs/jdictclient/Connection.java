@@ -20,16 +20,16 @@
  */
 package com.github.rtgill82.libs.jdictclient;
 
-import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A connection to a DICT host.
@@ -47,12 +47,17 @@ public class Connection {
     private final String mHost;
     private final int mPort;
     private final int mTimeout;
+    private final ConnectionConfig mConfig;
 
     private Socket mSocket;
     private Banner mBanner;
 
-    private BufferedReader mIn;
-    private PrintWriter mOut;
+    private ResponseReader mIn;
+    private CommandEncoder mOut;
+    private ResponseParser mParser;
+
+    /** System.nanoTime() by which reads must complete, or 0 for none. */
+    private long mDeadline;
 
     /**
      * Construct a new connection.
@@ -63,9 +68,24 @@ public class Connection {
      *
      */
     public Connection(String host, int port, int timeout) {
+        this(host, port, timeout, ConnectionConfig.DEFAULT);
+    }
+
+    /**
+     * Construct a new connection with custom socket settings.
+     *
+     * @param host DICT host
+     * @param port port number
+     * @param timeout connection timeout
+     * @param config socket and stream settings
+     *
+     */
+    public Connection(String host, int port, int timeout,
+                      ConnectionConfig config) {
         mHost = host;
         mPort = port;
         mTimeout = timeout;
+        mConfig = config;
         mSocket = new Socket();
     }
 
@@ -103,6 +123,7 @@ public class Connection {
         mHost = socket.getInetAddress().getHostName();
         mPort = socket.getPort();
         mTimeout = socket.getSoTimeout();
+        mConfig = ConnectionConfig.DEFAULT;
         mSocket = socket;
         readBanner();
     }
@@ -115,6 +136,7 @@ public class Connection {
      */
     public void connect() throws IOException {
         if (!mSocket.isConnected()) {
+            configure();
             mSocket.connect(new InetSocketAddress(mHost, mPort), mTimeout);
             readBanner();
         }
@@ -206,30 +228,101 @@ public class Connection {
         return mTimeout;
     }
 
+    public ConnectionConfig getConfig() {
+        return mConfig;
+    }
+
     public boolean isConnected() {
         return mSocket.isConnected();
     }
 
+    public boolean isClosed() {
+        return mSocket.isClosed();
+    }
+
+    /**
+     * Set the time by which reads from the host must complete.
+     * <p>
+     * If a read is still waiting when the deadline passes, the connection
+     * is closed and a DictTimeoutException is thrown.
+     *
+     * @param deadline a System.nanoTime() value, or 0 for no deadline
+     *
+     */
+    void setDeadline(long deadline) {
+        mDeadline = deadline;
+    }
+
+    long getDeadline() {
+        return mDeadline;
+    }
+
+    /**
+     * Get the earlier of the current deadline and a timeout starting now.
+     *
+     * @param timeout timeout in milliseconds, or 0 for no timeout
+     * @return a System.nanoTime() deadline, or 0 for no deadline
+     *
+     */
+    long deadlineAfter(long timeout) {
+        if (timeout <= 0)
+          return mDeadline;
+
+        long deadline =
+          System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        if (mDeadline != 0 && mDeadline - deadline < 0)
+          return mDeadline;
+        return deadline;
+    }
+
     void readBanner() throws IOException {
-        mIn = new BufferedReader(new InputStreamReader(getInputStream()));
-        mOut = new PrintWriter(getOutputStream(), true);
-        Response response = ResponseParser.parse(this);
+        mIn = new ResponseReader(new DeadlineInputStream(getInputStream()),
+                                 mConfig.getReaderBufferSize());
+        mBanner = checkBanner(mHost, getResponseParser(1).parse());
+    }
+
+    /**
+     * Apply the socket settings from the ConnectionConfig. Called before
+     * connecting, since the receive buffer size cannot grow past 64K once
+     * connected.
+     *
+     */
+    private void configure() throws SocketException {
+        mSocket.setTcpNoDelay(mConfig.getTcpNoDelay());
+        mSocket.setKeepAlive(mConfig.getKeepAlive());
+        if (mConfig.getSendBufferSize() > 0)
+          mSocket.setSendBufferSize(mConfig.getSendBufferSize());
+        if (mConfig.getReceiveBufferSize() > 0)
+          mSocket.setReceiveBufferSize(mConfig.getReceiveBufferSize());
+    }
+
+    /**
+     * Check the response received upon connecting to a host.
+     *
+     * @param host the host the response was received from
+     * @param response the first response received from the host
+     * @throws DictServerException when the host refuses the connection
+     * @throws DictException when the response is not a connection banner
+     * @return the connection Banner
+     *
+     */
+    static Banner checkBanner(String host, Response response)
+          throws DictException {
         switch (response.getStatus()) {
           case 220: /* Connection banner */
-            mBanner = (Banner) response.getData();
-            break;
+            return (Banner) response.getData();
 
           case 420: /* Server temporarily unavailable */
           case 421: /* Server shutting down at operator request */
           case 530: /* Access denied */
             throw new DictServerException(
-                                          mHost, response.getStatus(),
+                                          host, response.getStatus(),
                                           response.getMessage()
             );
 
           default:
             throw new DictException(
-                                    mHost, response.getStatus(),
+                                    host, response.getStatus(),
                                     "Connection banner expected, received: "
                                     + response.getMessage()
             );
@@ -244,11 +337,98 @@ public class Connection {
         return mSocket.getOutputStream();
     }
 
-    BufferedReader getInputReader() {
+    ResponseReader getInputReader() {
         return mIn;
     }
 
-    PrintWriter getOutputWriter() {
+    /**
+     * Get the encoder that writes commands to the host.
+     *
+     * @throws IOException from associated Socket
+     * @return the connection's CommandEncoder
+     *
+     */
+    CommandEncoder getCommandEncoder() throws IOException {
+        if (mOut == null)
+          mOut = new CommandEncoder(getOutputStream());
         return mOut;
     }
+
+    /**
+     * Get the connection's parser, reset to read the responses to a
+     * Command.
+     *
+     * @param numCommands the number of commands the responses answer
+     * @return the connection's ResponseParser
+     *
+     */
+    ResponseParser getResponseParser(int numCommands) {
+        if (mParser == null)
+          mParser = new ResponseParser(mHost, getInputReader(), numCommands);
+        else
+          mParser.reset(numCommands);
+        return mParser;
+    }
+
+    /**
+     * Applies the connection deadline to each read from the socket by
+     * shortening the socket timeout to the time remaining.
+     *
+     */
+    private class DeadlineInputStream extends FilterInputStream {
+        /** Socket timeout used when no deadline is set. */
+        private final int mSoTimeout;
+        private int mCurrentTimeout;
+
+        DeadlineInputStream(InputStream in) throws IOException {
+            super(in);
+            mSoTimeout = mSocket.getSoTimeout();
+            mCurrentTimeout = mSoTimeout;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long deadline = mDeadline;
+            if (deadline == 0) {
+                setTimeout(mSoTimeout);
+                return in.read(b, off, len);
+            }
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+              throw expired();
+
+            /* A socket timeout of 0 means wait forever, so wait at least
+             * one millisecond. */
+            setTimeout((int) Math.min(Integer.MAX_VALUE, Math.max(1,
+                TimeUnit.NANOSECONDS.toMillis(remaining))));
+            try {
+                return in.read(b, off, len);
+            } catch (SocketTimeoutException e) {
+                throw expired();
+            }
+        }
+
+        private void setTimeout(int timeout) throws SocketException {
+            if (timeout != mCurrentTimeout) {
+                mSocket.setSoTimeout(timeout);
+                mCurrentTimeout = timeout;
+            }
+        }
+
+        private DictTimeoutException expired() {
+            try {
+                mSocket.close();
+            } catch (IOException e) {
+                /* The connection is unusable either way. */
+            }
+            return new DictTimeoutException(mHost);
+        }
+    }
 }
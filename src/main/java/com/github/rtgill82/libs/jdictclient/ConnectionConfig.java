@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+/**
+ * Socket and stream settings used when opening a Connection.
+ * <p>
+ * By default the socket keeps the operating system's settings: Nagle's
+ * algorithm stays enabled and buffer sizes of 0 leave the system defaults
+ * in place. Each command is written with a single flush, so disabling
+ * Nagle's algorithm is rarely needed.
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class ConnectionConfig {
+    /** The default size of the response reader buffer in bytes. */
+    public static final int DEFAULT_READER_BUFFER_SIZE =
+      ResponseReader.DEFAULT_BUFFER_SIZE;
+
+    /** The settings used when no ConnectionConfig is given. */
+    public static final ConnectionConfig DEFAULT = new Builder().build();
+
+    private final boolean mTcpNoDelay;
+    private final boolean mKeepAlive;
+    private final int mSendBufferSize;
+    private final int mReceiveBufferSize;
+    private final int mReaderBufferSize;
+    private final boolean mAutoFlush;
+
+    private ConnectionConfig(Builder builder) {
+        mTcpNoDelay = builder.mTcpNoDelay;
+        mKeepAlive = builder.mKeepAlive;
+        mSendBufferSize = builder.mSendBufferSize;
+        mReceiveBufferSize = builder.mReceiveBufferSize;
+        mReaderBufferSize = builder.mReaderBufferSize;
+        mAutoFlush = builder.mAutoFlush;
+    }
+
+    public boolean getTcpNoDelay() {
+        return mTcpNoDelay;
+    }
+
+    public boolean getKeepAlive() {
+        return mKeepAlive;
+    }
+
+    public int getSendBufferSize() {
+        return mSendBufferSize;
+    }
+
+    public int getReceiveBufferSize() {
+        return mReceiveBufferSize;
+    }
+
+    public int getReaderBufferSize() {
+        return mReaderBufferSize;
+    }
+
+    public boolean getAutoFlush() {
+        return mAutoFlush;
+    }
+
+    /**
+     * Constructs and initializes an instance of ConnectionConfig.
+     *
+     */
+    public static class Builder {
+        private boolean mTcpNoDelay = false;
+        private boolean mKeepAlive = false;
+        private int mSendBufferSize;
+        private int mReceiveBufferSize;
+        private int mReaderBufferSize = DEFAULT_READER_BUFFER_SIZE;
+        private boolean mAutoFlush = false;
+
+        /**
+         * Enable or disable TCP_NODELAY. Disabled by default.
+         *
+         * @param tcpNoDelay true to disable Nagle's algorithm
+         * @return the config builder in progress
+         *
+         */
+        public Builder setTcpNoDelay(boolean tcpNoDelay) {
+            mTcpNoDelay = tcpNoDelay;
+            return this;
+        }
+
+        /**
+         * Enable or disable SO_KEEPALIVE. Disabled by default.
+         *
+         * @param keepAlive true to send TCP keep-alive probes on idle
+         *        connections
+         * @return the config builder in progress
+         *
+         */
+        public Builder setKeepAlive(boolean keepAlive) {
+            mKeepAlive = keepAlive;
+            return this;
+        }
+
+        /**
+         * Set the socket send buffer size (SO_SNDBUF).
+         *
+         * @param size buffer size in bytes, or 0 for the system default
+         * @return the config builder in progress
+         *
+         */
+        public Builder setSendBufferSize(int size) {
+            mSendBufferSize = checkSize(size);
+            return this;
+        }
+
+        /**
+         * Set the socket receive buffer size (SO_RCVBUF).
+         * <p>
+         * The size is set before connecting so that buffers larger than
+         * 64K can take effect.
+         *
+         * @param size buffer size in bytes, or 0 for the system default
+         * @return the config builder in progress
+         *
+         */
+        public Builder setReceiveBufferSize(int size) {
+            mReceiveBufferSize = checkSize(size);
+            return this;
+        }
+
+        /**
+         * Set the size of the buffer responses are read through.
+         *
+         * @param size buffer size in bytes
+         * @return the config builder in progress
+         *
+         */
+        public Builder setReaderBufferSize(int size) {
+            if (size < 1)
+              throw new RuntimeException(
+                  "Reader buffer size must be at least 1."
+                );
+
+            mReaderBufferSize = size;
+            return this;
+        }
+
+        /**
+         * Set whether every command is flushed as soon as it is written.
+         * <p>
+         * Commands are always flushed once they have been written, and
+         * pipelined batches are flushed once per group of commands, so
+         * this only adds flushes. Disabled by default.
+         *
+         * @param autoFlush true to flush after every command
+         * @return the config builder in progress
+         *
+         */
+        public Builder setAutoFlush(boolean autoFlush) {
+            mAutoFlush = autoFlush;
+            return this;
+        }
+
+        /**
+         * Return the built ConnectionConfig instance.
+         *
+         * @return the ConnectionConfig instance that was built
+         *
+         */
+        public ConnectionConfig build() {
+            return new ConnectionConfig(this);
+        }
+
+        private static int checkSize(int size) {
+            if (size < 0)
+              throw new RuntimeException("Buffer size must not be negative.");
+            return size;
+        }
+    }
+}
@@ -22,6 +22,9 @@ package com.github.rtgill82.libs.jdictclient;
 
 /**
  * Simple class that represents a DICT database.
+ * <p>
+ * Databases are compared by name and description only; the database
+ * information does not take part in equals() or hashCode().
  *
  * @author Robert Gill &lt;rtgill82@gmail.com&gt;
  *
@@ -20,6 +20,8 @@
  */
 package com.github.rtgill82.libs.jdictclient;
 
+import java.util.Objects;
+
 /**
  * Simple class that represents a DICT definition.
  *
@@ -80,6 +82,24 @@ public class Definition {
         return mDefinition;
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+          return true;
+        if (obj == null || obj.getClass() != getClass())
+          return false;
+
+        Definition definition = (Definition) obj;
+        return Objects.equals(mWord, definition.mWord)
+               && Objects.equals(mDatabase, definition.mDatabase)
+               && Objects.equals(mDefinition, definition.mDefinition);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mWord, mDatabase, mDefinition);
+    }
+
     @Override
     public String toString() {
         return mDatabase + "\n" + mDefinition;
@@ -0,0 +1,522 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-memory cache of DEFINE and MATCH results.
+ * <p>
+ * Results are keyed by the server's host and port and the requested
+ * word, database and strategy, so clients of different servers may share
+ * a cache. Words to define, and words matched with a strategy that
+ * ignores case such as "exact" or "prefix", are normalized by trimming
+ * them, collapsing runs of white space and converting them to lower case,
+ * so lookups that differ only in case or spacing share an entry.
+ * <p>
+ * The cache is bounded by the estimated size of its results in bytes.
+ * When it is full, the least recently used results are evicted. Each
+ * result expires after the time to live of the database it was requested
+ * from, or of any database it contains if that is shorter.
+ * <p>
+ * Requests answered with 552 (no match) are remembered separately, with
+ * a shorter time to live and a size budget of their own, so that lookups
+ * of misspelled words are answered locally without evicting results.
+ * <p>
+ * A cache is thread safe and may be shared by any number of clients,
+ * for example through JDictClientPool.Builder.setCache().
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class DictCache {
+    /** The default maximum size of cached results in bytes. */
+    public static final long DEFAULT_MAX_WEIGHT = 16 * 1024 * 1024;
+
+    /** The default time to live of a cached result in milliseconds. */
+    public static final long DEFAULT_TTL = 10 * 60 * 1000;
+
+    /** The default maximum size of cached misses in bytes. */
+    public static final long DEFAULT_MAX_NEGATIVE_WEIGHT = 1024 * 1024;
+
+    /** The default time to live of a cached miss in milliseconds. */
+    public static final long DEFAULT_NEGATIVE_TTL = 60 * 1000;
+
+    /** MATCH strategies of dictd that ignore case and spacing. */
+    private static final Set<String> CASELESS_STRATEGIES =
+      new HashSet<>(Arrays.asList("exact", "prefix", "nprefix", "substring",
+                                  "suffix", "soundex", "lev", "word",
+                                  "first", "last"));
+
+    /** Estimated bytes used by an object and its String fields. */
+    private static final int OBJECT_WEIGHT = 64;
+
+    private final long mMaxWeight;
+    private final long mDefaultTtl;
+    private final Map<String, Long> mTtls;
+    private final long mMaxNegativeWeight;
+    private final long mNegativeTtl;
+
+    /** Entries in least recently used order. */
+    private final LinkedHashMap<Key, Entry> mEntries =
+      new LinkedHashMap<>(16, 0.75f, true);
+    private long mWeight;
+
+    /** Requests known to have no match, in least recently used order. */
+    private final LinkedHashMap<Key, Entry> mMisses =
+      new LinkedHashMap<>(16, 0.75f, true);
+    private long mNegativeWeight;
+
+    /**
+     * Construct a new DictCache using the default settings.
+     *
+     */
+    public DictCache() {
+        this(new Builder());
+    }
+
+    private DictCache(Builder builder) {
+        mMaxWeight = builder.mMaxWeight;
+        mDefaultTtl = builder.mDefaultTtl;
+        mTtls = new HashMap<>(builder.mTtls);
+        mMaxNegativeWeight = builder.mMaxNegativeWeight;
+        mNegativeTtl = builder.mNegativeTtl;
+    }
+
+    /**
+     * Remove every result from the cache.
+     *
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+        mWeight = 0;
+        mMisses.clear();
+        mNegativeWeight = 0;
+    }
+
+    /**
+     * Get the number of cached results.
+     *
+     * @return the number of results
+     *
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Get the estimated size of the cached results.
+     *
+     * @return the size in bytes
+     *
+     */
+    public synchronized long getWeight() {
+        return mWeight;
+    }
+
+    /**
+     * Get the number of cached misses.
+     *
+     * @return the number of requests known to have no match
+     *
+     */
+    public synchronized int getMissCount() {
+        return mMisses.size();
+    }
+
+    /**
+     * Get the time to live of results from a database.
+     *
+     * @param database the database name
+     * @return the time to live in milliseconds
+     *
+     */
+    public long getTtl(String database) {
+        Long ttl = mTtls.get(database);
+        return ttl == null ? mDefaultTtl : ttl;
+    }
+
+    /**
+     * Get the key for a DEFINE request.
+     *
+     * @param host the DICT host the request is sent to
+     * @param port the port number
+     * @param word the word to define
+     * @param database the database to search, or null for all databases
+     * @return the cache key
+     *
+     */
+    static Key defineKey(String host, int port, String word,
+                         String database) {
+        return new Key(host + ":" + port, Command.Type.DEFINE,
+                       normalize(word), database == null ? "*" : database,
+                       null);
+    }
+
+    /**
+     * Get the key for a MATCH request.
+     * <p>
+     * The word is only normalized for strategies known to ignore case
+     * and spacing; a regular expression is kept exactly as given.
+     *
+     * @param host the DICT host the request is sent to
+     * @param port the port number
+     * @param word the word to match
+     * @param strategy the strategy used to match
+     * @param database the database to search, or null for all databases
+     * @return the cache key
+     *
+     */
+    static Key matchKey(String host, int port, String word,
+                        String strategy, String database) {
+        String matchWord =
+          CASELESS_STRATEGIES.contains(strategy) ? normalize(word) : word;
+        return new Key(host + ":" + port, Command.Type.MATCH, matchWord,
+                       database == null ? "*" : database, strategy);
+    }
+
+    /**
+     * Get a cached result.
+     *
+     * @param key the key of the request
+     * @return a copy of the result, or null if it is not cached
+     *
+     */
+    synchronized <T> List<T> get(Key key) {
+        Entry entry = mEntries.get(key);
+        if (entry == null)
+          return null;
+
+        if (System.nanoTime() - entry.mExpires >= 0) {
+            remove(key);
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<T> value = (List<T>) entry.mValue;
+        return new ArrayList<>(value);
+    }
+
+    /**
+     * Check whether a request is known to have no match.
+     *
+     * @param key the key of the request
+     * @return true if the server answered the request with 552 within the
+     *         negative time to live
+     *
+     */
+    synchronized boolean isMiss(Key key) {
+        Entry entry = mMisses.get(key);
+        if (entry == null)
+          return false;
+
+        if (System.nanoTime() - entry.mExpires >= 0) {
+            mNegativeWeight -= mMisses.remove(key).mWeight;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Remember that a request has no match, evicting the least recently
+     * used misses if their budget is full.
+     *
+     * @param key the key of the request
+     *
+     */
+    void putMiss(Key key) {
+        long ttl = Math.min(mNegativeTtl, getTtl(key.mDatabase));
+        long weight = OBJECT_WEIGHT + 2L * key.mWord.length();
+        if (ttl <= 0 || weight > mMaxNegativeWeight)
+          return;
+
+        Entry entry = new Entry(null, weight,
+            System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl));
+        synchronized (this) {
+            Entry previous = mMisses.put(key, entry);
+            if (previous != null)
+              mNegativeWeight -= previous.mWeight;
+            mNegativeWeight += weight;
+
+            Iterator<Entry> iterator = mMisses.values().iterator();
+            while (mNegativeWeight > mMaxNegativeWeight) {
+                mNegativeWeight -= iterator.next().mWeight;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Cache a result, evicting the least recently used results if the
+     * cache is full.
+     *
+     * @param key the key of the request
+     * @param value the result of the request
+     *
+     */
+    void put(Key key, List<?> value) {
+        long weight = weigh(value);
+        if (weight > mMaxWeight)
+          return;
+
+        long ttl = getTtl(key.mDatabase);
+        for (Object item : value)
+          ttl = Math.min(ttl, getTtl(databaseOf(item)));
+        if (ttl <= 0)
+          return;
+
+        Entry entry = new Entry(
+            Collections.unmodifiableList(new ArrayList<>(value)), weight,
+            System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl));
+        synchronized (this) {
+            remove(key);
+            Entry miss = mMisses.remove(key);
+            if (miss != null)
+              mNegativeWeight -= miss.mWeight;
+            mEntries.put(key, entry);
+            mWeight += weight;
+
+            Iterator<Entry> iterator = mEntries.values().iterator();
+            while (mWeight > mMaxWeight) {
+                mWeight -= iterator.next().mWeight;
+                iterator.remove();
+            }
+        }
+    }
+
+    private void remove(Key key) {
+        Entry entry = mEntries.remove(key);
+        if (entry != null)
+          mWeight -= entry.mWeight;
+    }
+
+    private static String normalize(String word) {
+        StringBuilder normalized = new StringBuilder(word.length());
+        boolean space = false;
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = normalized.length() > 0;
+                continue;
+            }
+            if (space)
+              normalized.append(' ');
+            normalized.append(c);
+            space = false;
+        }
+        return normalized.toString().toLowerCase(Locale.ROOT);
+    }
+
+    private static String databaseOf(Object item) {
+        if (item instanceof Definition)
+          return ((Definition) item).getDatabase().getName();
+        if (item instanceof Match)
+          return ((Match) item).getDatabase();
+        return null;
+    }
+
+    /**
+     * Estimate the memory used by a result.
+     *
+     */
+    private static long weigh(List<?> value) {
+        long weight = OBJECT_WEIGHT;
+        for (Object item : value) {
+            weight += OBJECT_WEIGHT;
+            if (item instanceof Definition) {
+                Definition definition = (Definition) item;
+                weight += 2L * (length(definition.getWord())
+                                + length(definition.getDefinition()));
+            } else if (item instanceof Element) {
+                Element element = (Element) item;
+                weight += 2L * (length(element.getKey())
+                                + length(element.getValue()));
+            }
+        }
+        return weight;
+    }
+
+    private static int length(String text) {
+        return text == null ? 0 : text.length();
+    }
+
+    /**
+     * Identifies a DEFINE or MATCH request and the server it is sent to.
+     *
+     */
+    static final class Key {
+        private final String mServer;
+        private final Command.Type mType;
+        private final String mWord;
+        private final String mDatabase;
+        private final String mStrategy;
+
+        Key(String server, Command.Type type, String word, String database,
+            String strategy) {
+            mServer = server;
+            mType = type;
+            mWord = word;
+            mDatabase = database;
+            mStrategy = strategy;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+              return true;
+            if (!(obj instanceof Key))
+              return false;
+
+            Key key = (Key) obj;
+            return mType == key.mType && mServer.equals(key.mServer)
+                   && mWord.equals(key.mWord)
+                   && mDatabase.equals(key.mDatabase)
+                   && Objects.equals(mStrategy, key.mStrategy);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mServer, mType, mWord, mDatabase,
+                                mStrategy);
+        }
+    }
+
+    private static final class Entry {
+        private final List<?> mValue;
+        private final long mWeight;
+
+        /** System.nanoTime() at which the entry expires. */
+        private final long mExpires;
+
+        Entry(List<?> value, long weight, long expires) {
+            mValue = value;
+            mWeight = weight;
+            mExpires = expires;
+        }
+    }
+
+    /**
+     * Constructs and initializes an instance of DictCache.
+     *
+     */
+    public static class Builder {
+        private long mMaxWeight = DEFAULT_MAX_WEIGHT;
+        private long mDefaultTtl = DEFAULT_TTL;
+        private final Map<String, Long> mTtls = new HashMap<>();
+        private long mMaxNegativeWeight = DEFAULT_MAX_NEGATIVE_WEIGHT;
+        private long mNegativeTtl = DEFAULT_NEGATIVE_TTL;
+
+        /**
+         * Set the maximum estimated size of the cached results.
+         *
+         * @param maxWeight maximum size in bytes
+         * @return the cache builder in progress
+         *
+         */
+        public Builder setMaxWeight(long maxWeight) {
+            mMaxWeight = maxWeight;
+            return this;
+        }
+
+        /**
+         * Set the time to live of results from databases without a time
+         * to live of their own.
+         *
+         * @param ttl time to live in milliseconds
+         * @return the cache builder in progress
+         *
+         */
+        public Builder setDefaultTtl(long ttl) {
+            mDefaultTtl = ttl;
+            return this;
+        }
+
+        /**
+         * Set the time to live of results from a database.
+         * <p>
+         * A time to live of 0 disables caching of results from the
+         * database.
+         *
+         * @param database the database name
+         * @param ttl time to live in milliseconds
+         * @return the cache builder in progress
+         *
+         */
+        public Builder setTtl(String database, long ttl) {
+            mTtls.put(database, ttl);
+            return this;
+        }
+
+        /**
+         * Set the maximum estimated size of the cached misses.
+         * <p>
+         * Misses have their own budget and never evict results.
+         *
+         * @param maxWeight maximum size in bytes, or 0 to disable caching
+         *        of misses
+         * @return the cache builder in progress
+         *
+         */
+        public Builder setMaxNegativeWeight(long maxWeight) {
+            mMaxNegativeWeight = maxWeight;
+            return this;
+        }
+
+        /**
+         * Set how long a request answered with 552 (no match) is answered
+         * locally.
+         * <p>
+         * The time is limited to the time to live of the requested
+         * database.
+         *
+         * @param ttl time to live in milliseconds, or 0 to disable caching
+         *        of misses
+         * @return the cache builder in progress
+         *
+         */
+        public Builder setNegativeTtl(long ttl) {
+            mNegativeTtl = ttl;
+            return this;
+        }
+
+        /**
+         * Return the built DictCache instance.
+         *
+         * @return the DictCache instance that was built
+         *
+         */
+        public DictCache build() {
+            return new DictCache(this);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.io.IOException;
+
+/**
+ * Signals that a request shared with a concurrent identical request
+ * failed, or that the wait for the shared request ran out of time.
+ * <p>
+ * The command was sent by another thread, on another connection; the
+ * connection of the thread receiving this exception, if it has one, was
+ * not used and is still healthy. The failure of the shared request is
+ * available from getCause().
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class DictCoalescedException extends IOException {
+    /**
+     * Construct a new DictCoalescedException.
+     *
+     * @param host the host the shared request was sent to
+     * @param cause the failure of the shared request, or null if the wait
+     *        timed out
+     *
+     */
+    DictCoalescedException(String host, Throwable cause) {
+        super(cause == null
+              ? host + ": Deadline expired waiting for a shared request."
+              : host + ": Shared request failed: " + cause.getMessage(),
+              cause);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+/**
+ * Signals that a JDictClientPool had no connection to lend within its
+ * maximum wait time.
+ * <p>
+ * Every connection to the host was in use by other threads. The host
+ * itself may be perfectly healthy, so the exception does not mean that
+ * a connection was lost.
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class DictPoolTimeoutException extends DictConnectionException {
+    /**
+     * Construct a new DictPoolTimeoutException.
+     *
+     * @param pool describes the host the pool was waiting for
+     *
+     */
+    DictPoolTimeoutException(String pool) {
+        super("Timed out waiting for a connection to " + pool);
+    }
+}
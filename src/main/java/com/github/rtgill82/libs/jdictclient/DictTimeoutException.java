@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+/**
+ * Signals that a DICT server did not answer a command before its deadline.
+ * <p>
+ * The connection is closed when a deadline expires, since the rest of the
+ * response may still arrive and could be mistaken for the answer to the
+ * next command.
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class DictTimeoutException extends DictConnectionException {
+    /**
+     * Construct a new DictTimeoutException for host.
+     *
+     * @param host the host that failed to answer
+     *
+     */
+    DictTimeoutException(String host) {
+        super(host + ": Deadline expired waiting for a response.");
+    }
+
+    /**
+     * Construct a new DictTimeoutException for host with a message.
+     *
+     * @param host the host that failed to answer
+     * @param message the detail message
+     *
+     */
+    DictTimeoutException(String host, String message) {
+        super(host + ": " + message);
+    }
+}
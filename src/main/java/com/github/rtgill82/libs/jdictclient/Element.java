@@ -20,6 +20,8 @@
  */
 package com.github.rtgill82.libs.jdictclient;
 
+import java.util.Objects;
+
 /**
  * An Element is a simple key, value pair.
  * <p>
@@ -32,6 +34,9 @@ package com.github.rtgill82.libs.jdictclient;
  * </pre>
  * <p>
  * This includes data returned by SHOW DATABASES, SHOW STRATEGIES, and MATCH.
+ * <p>
+ * Elements are equal when they are of the same class and have equal keys
+ * and values, so they can be used in sets and as map keys.
  *
  * @author Robert Gill &lt;rtgill82@gmail.com&gt;
  *
@@ -75,6 +80,23 @@ public class Element {
         return mValue;
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+          return true;
+        if (obj == null || obj.getClass() != getClass())
+          return false;
+
+        Element element = (Element) obj;
+        return Objects.equals(mKey, element.mKey)
+               && Objects.equals(mValue, element.mValue);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hashCode(mKey) + Objects.hashCode(mValue);
+    }
+
     @Override
     public String toString() {
         return mKey + " \"" + mValue + '"';
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+/**
+ * Creates the Elements listed in SHOW DATABASES, SHOW STRATEGIES and MATCH
+ * responses.
+ * <p>
+ * A ResponseParser can be given a factory for each of these responses to
+ * build application specific Element subclasses directly from the parsed
+ * key and value.
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public interface ElementFactory<T extends Element> {
+    /** Creates the Databases listed by SHOW DATABASES. */
+    ElementFactory<Database> DATABASE = Database::new;
+
+    /** Creates the Strategies listed by SHOW STRATEGIES. */
+    ElementFactory<Strategy> STRATEGY = Strategy::new;
+
+    /** Creates the Matches listed by MATCH. */
+    ElementFactory<Match> MATCH = Match::new;
+
+    /**
+     * Create an Element.
+     *
+     * @param key the key identifying the element
+     * @param value the value of the element
+     * @return the new Element
+     *
+     */
+    T create(String key, String value);
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.io.OutputStream;
+
+/**
+ * Decides what to do with the body of a response once its status line has
+ * been read, before any of the body is read.
+ * <p>
+ * The handler is called for every response followed by a text block: the
+ * lists of SHOW DATABASES, SHOW STRATEGIES and MATCH, the text of SHOW
+ * INFO, HELP and SHOW SERVER, and each definition. For a definition the
+ * header's data is a Definition whose text is null, so the word and
+ * database can be inspected before the definition itself is read.
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public interface HeaderHandler {
+    Body handleHeader(Response header) throws DictException;
+
+    /**
+     * What to do with the body of a response.
+     *
+     */
+    final class Body {
+        /** Read the body into the Response as usual. */
+        public static final Body KEEP = new Body(null);
+
+        /**
+         * Skip the body without decoding it. The Response is dropped and
+         * is not passed to the Command's ResponseHandler.
+         */
+        public static final Body DISCARD = new Body(null);
+
+        private final OutputStream mOutput;
+
+        private Body(OutputStream output) {
+            mOutput = output;
+        }
+
+        /**
+         * Copy the body to a stream as it is read instead of keeping it.
+         * <p>
+         * The body is written as UTF-8 text with "\n" line endings and
+         * dot-stuffing removed, one line at a time. The Response is kept
+         * without any data of its own.
+         *
+         * @param output the stream to copy the body to
+         * @return a Body copying to output
+         *
+         */
+        public static Body streamTo(OutputStream output) {
+            if (output == null)
+              throw new RuntimeException("Body output stream is null.");
+            return new Body(output);
+        }
+
+        OutputStream getOutput() {
+            return mOutput;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+/**
+ * Controls when an AsyncJDictClient sends a second copy of a lookup.
+ * <p>
+ * When a DEFINE or MATCH has not been answered within the chosen
+ * percentile of recent response times, the same lookup is sent again on
+ * another pooled connection and whichever answer arrives first is used.
+ * Only a slow tail of requests is duplicated, so the extra load on the
+ * server is roughly the fraction of requests above the percentile.
+ * <p>
+ * No lookups are duplicated until enough response times have been seen to
+ * estimate the percentile.
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class HedgePolicy {
+    /** The default response time percentile after which to hedge. */
+    public static final double DEFAULT_PERCENTILE = 0.95;
+
+    /** The default minimum delay before hedging in milliseconds. */
+    public static final long DEFAULT_MIN_DELAY = 5;
+
+    private final double mPercentile;
+    private final long mMinDelay;
+
+    /**
+     * Construct a new HedgePolicy using the default settings.
+     *
+     */
+    public HedgePolicy() {
+        this(DEFAULT_PERCENTILE, DEFAULT_MIN_DELAY);
+    }
+
+    /**
+     * Construct a new HedgePolicy.
+     *
+     * @param percentile response time percentile, between 0 and 1, after
+     *        which a second request is sent
+     * @param minDelay minimum delay before a second request is sent in
+     *        milliseconds
+     *
+     */
+    public HedgePolicy(double percentile, long minDelay) {
+        if (percentile <= 0 || percentile >= 1)
+          throw new RuntimeException(
+              "Hedge percentile must be between 0 and 1."
+            );
+
+        mPercentile = percentile;
+        mMinDelay = minDelay;
+    }
+
+    /**
+     * Get the response time percentile after which a second request is
+     * sent.
+     *
+     * @return percentile between 0 and 1
+     *
+     */
+    public double getPercentile() {
+        return mPercentile;
+    }
+
+    /**
+     * Get the minimum delay before a second request is sent.
+     *
+     * @return minimum delay in milliseconds
+     *
+     */
+    public long getMinDelay() {
+        return mMinDelay;
+    }
+}
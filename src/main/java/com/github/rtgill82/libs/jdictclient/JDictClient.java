@@ -20,13 +20,24 @@
  */
 package com.github.rtgill82.libs.jdictclient;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import com.github.rtgill82.libs.jdictclient.Command.Type;
+import com.github.rtgill82.libs.jdictclient.HeaderHandler.Body;
+import com.github.rtgill82.libs.jdictclient.RequestCoalescer.Loader;
 import static com.github.rtgill82.libs.jdictclient.Command.Type.*;
 
 /**
@@ -45,6 +56,21 @@ public class JDictClient {
     private static String sClientString;
 
     private Connection mConnection;
+    private int mPipelineDepth = Command.Batch.DEFAULT_DEPTH;
+    private ReconnectPolicy mReconnectPolicy;
+    private long mDeadline;
+    private DictCache mCache;
+    private MetadataCache mMetadataCache;
+    private RequestCoalescer mCoalescer;
+
+    /** Commands without parameters, built once and sent repeatedly. */
+    private final Map<Type, Command> mFixedCommands =
+      new EnumMap<>(Type.class);
+    private final ResponseHandler mExceptionHandler =
+      new ThrowExceptionHandler();
+
+    private String mUsername;
+    private String mSecret;
 
     /**
      * Construct a new JDictClient.
@@ -189,6 +215,168 @@ public class JDictClient {
         sClientString = clientString;
     }
 
+    /**
+     * Get the client string sent to the server.
+     *
+     * @return client string sent to DICT server
+     *
+     */
+    static String getClientString() {
+        if (sClientString == null)
+          return sLibraryName + " " + sLibraryVersion;
+        return sClientString;
+    }
+
+    /**
+     * Set the maximum number of pipelined commands awaiting a response.
+     * <p>
+     * Used by defineAll() and matchAll().
+     *
+     * @param depth the pipeline depth
+     *
+     */
+    public void setPipelineDepth(int depth) {
+        if (depth < 1)
+          throw new RuntimeException("Pipeline depth must be at least 1.");
+        mPipelineDepth = depth;
+    }
+
+    /**
+     * Set the policy used to reconnect after the connection is lost.
+     * <p>
+     * When a policy is set and the server closes the connection, or answers
+     * with status 420 or 421, the client opens a new connection, sends the
+     * CLIENT command, authenticates again if authenticate() had succeeded,
+     * and retries the interrupted command. Only commands that are safe to
+     * repeat (DEFINE, MATCH, SHOW, STATUS and HELP) are retried. By default
+     * no policy is set and such failures are thrown to the caller.
+     *
+     * @param policy the reconnection policy or null to disable reconnection
+     *
+     */
+    public void setReconnectPolicy(ReconnectPolicy policy) {
+        mReconnectPolicy = policy;
+    }
+
+    /**
+     * Set the time allowed to read the response to each following call.
+     * <p>
+     * For defineAll() and matchAll() the time applies to the whole batch.
+     * If a deadline expires the connection is closed, a
+     * DictTimeoutException is thrown, and the interrupted call is not
+     * retried by the ReconnectPolicy.
+     *
+     * @param deadline time allowed in milliseconds, or 0 for no limit
+     *
+     */
+    public void setDeadline(long deadline) {
+        mDeadline = deadline;
+        mFixedCommands.clear();
+    }
+
+    /**
+     * Set the cache consulted by define() and match() before sending a
+     * request to the server.
+     * <p>
+     * Only define(word), define(word, database), match(word, strategy)
+     * and match(word, strategy, database) use the cache. Requests answered
+     * with 552 (no match) are cached as misses and return null. The same
+     * cache may be shared by several clients.
+     *
+     * @param cache the cache to use, or null to disable caching
+     *
+     */
+    public void setCache(DictCache cache) {
+        mCache = cache;
+    }
+
+    /**
+     * Set the cache consulted by getDatabases(), getStrategies() and
+     * getDatabaseInfo() before sending a request to the server.
+     * <p>
+     * Use MetadataCache.getShared() to share the results with every other
+     * client in the JVM. A thread that finds another loading the same
+     * result waits for it while keeping this client's connection, so
+     * pooled clients should use JDictClientPool.getDatabases() and the
+     * like instead, which wait before borrowing a connection.
+     *
+     * @param cache the cache to use, or null to disable caching
+     *
+     */
+    public void setMetadataCache(MetadataCache cache) {
+        mMetadataCache = cache;
+    }
+
+    /**
+     * Get the cache consulted by getDatabases(), getStrategies() and
+     * getDatabaseInfo().
+     *
+     * @return the cache, or null if caching is disabled
+     *
+     */
+    public MetadataCache getMetadataCache() {
+        return mMetadataCache;
+    }
+
+    /**
+     * Set the coalescer shared by concurrent identical requests.
+     * <p>
+     * While define(), match(), getDatabases(), getStrategies(),
+     * getDatabaseInfo() or getServerInfo() is waiting for the server, the
+     * same call made through any client using the coalescer waits for its
+     * result instead of sending another command.
+     * <p>
+     * This suits clients that each hold their own connection. Clients
+     * borrowed from a JDictClientPool should leave it unset and let the
+     * pool coalesce requests before a connection is borrowed.
+     *
+     * @param coalescer the coalescer to use, or null to send every request
+     *
+     */
+    public void setRequestCoalescer(RequestCoalescer coalescer) {
+        mCoalescer = coalescer;
+    }
+
+    /**
+     * Get the coalescer shared by concurrent identical requests.
+     *
+     * @return the coalescer, or null if requests are not coalesced
+     *
+     */
+    public RequestCoalescer getRequestCoalescer() {
+        return mCoalescer;
+    }
+
+    /**
+     * Get the cache consulted by define() and match().
+     *
+     * @return the cache, or null if caching is disabled
+     *
+     */
+    public DictCache getCache() {
+        return mCache;
+    }
+
+    /**
+     * Get the time allowed to read the response to each call.
+     *
+     * @return time allowed in milliseconds, or 0 for no limit
+     *
+     */
+    public long getDeadline() {
+        return mDeadline;
+    }
+
+    /**
+     * Get the maximum number of pipelined commands awaiting a response.
+     *
+     * @return the pipeline depth
+     *
+     */
+    public int getPipelineDepth() {
+        return mPipelineDepth;
+    }
+
     /**
      * Get the client connection.
      *
@@ -238,12 +426,37 @@ public class JDictClient {
      *
      */
     public String getServerInfo() throws IOException {
-        Command.Builder builder = commandBuilder(SHOW_SERVER);
-        Command command = builder.build();
-        List<Response> responses = command.execute(mConnection);
+        if (mCoalescer == null)
+          return fetchServerInfo();
+        return coalesce(this::fetchServerInfo, SHOW_SERVER);
+    }
+
+    private String fetchServerInfo() throws IOException {
+        List<Response> responses = execute(fixedCommand(SHOW_SERVER));
         return responses.get(0).getRawData();
     }
 
+    /**
+     * Get the server status.
+     * <p>
+     * The STATUS command is cheap for the server to answer, which also makes
+     * it useful for checking that an idle connection is still alive.
+     *
+     * @throws IOException from associated Connection Socket
+     * @return server status string
+     *
+     */
+    public String getStatus() throws IOException {
+        List<Response> responses = execute(fixedCommand(STATUS));
+        Response resp = responses.get(0);
+        if (resp.getStatus() != 210) {
+            throw new DictException(mConnection.getHost(),
+                                    resp.getStatus(),
+                                    resp.getMessage());
+        }
+        return resp.getText();
+    }
+
     /**
      * Get summary of server commands.
      *
@@ -252,9 +465,7 @@ public class JDictClient {
      *
      */
     public String getHelp() throws IOException {
-        Command.Builder builder = commandBuilder(HELP);
-        Command command = builder.build();
-        List<Response> responses = command.execute(mConnection);
+        List<Response> responses = execute(fixedCommand(HELP));
         return responses.get(0).getRawData();
     }
 
@@ -275,11 +486,24 @@ public class JDictClient {
                             .setPassword(secret)
                             .build();
         List<Response> responses = command.execute(mConnection);
-        if (responses.get(0).getStatus() == 230)
-          rv = true;
+        if (responses.get(0).getStatus() == 230) {
+            mUsername = username;
+            mSecret = secret;
+            rv = true;
+        }
         return rv;
     }
 
+    /**
+     * Check whether authenticate() has succeeded on this client.
+     *
+     * @return true if the client is authenticated
+     *
+     */
+    public boolean isAuthenticated() {
+        return mUsername != null;
+    }
+
     /**
      * Get list of available databases from the server.
      *
@@ -290,8 +514,17 @@ public class JDictClient {
      *
      */
     public List<Database> getDatabases() throws IOException {
-        Command command = commandBuilder(SHOW_DATABASES).build();
-        List<Response> responses = command.execute(mConnection);
+        if (mMetadataCache == null && mCoalescer == null)
+          return fetchDatabases();
+        if (mMetadataCache == null)
+          return coalesce(this::fetchDatabases, SHOW_DATABASES);
+        return copyOf(mMetadataCache.get(mConnection,
+                                         MetadataCache.DATABASES,
+                                         mDeadline, this::fetchDatabases));
+    }
+
+    private List<Database> fetchDatabases() throws IOException {
+        List<Response> responses = execute(fixedCommand(SHOW_DATABASES));
         return (List<Database>) responses.get(0).getData();
     }
 
@@ -304,10 +537,20 @@ public class JDictClient {
      *
      */
     public String getDatabaseInfo(String database) throws IOException {
+        if (mMetadataCache == null && mCoalescer == null)
+          return fetchDatabaseInfo(database);
+        if (mMetadataCache == null)
+          return coalesce(() -> fetchDatabaseInfo(database), SHOW_INFO,
+                          database);
+        return mMetadataCache.get(mConnection, MetadataCache.info(database),
+                                  mDeadline, () -> fetchDatabaseInfo(database));
+    }
+
+    private String fetchDatabaseInfo(String database) throws IOException {
         Command command = commandBuilder(SHOW_INFO)
                             .setDatabase(database)
                             .build();
-        List<Response> responses = command.execute(mConnection);
+        List<Response> responses = execute(command);
         return responses.get(0).getRawData();
     }
 
@@ -320,11 +563,34 @@ public class JDictClient {
      *
      */
     public String getDatabaseInfo(Database database) throws IOException {
+        return getDatabaseInfo(database.getName());
+    }
+
+    /**
+     * Copy detailed database info for the specified database to a stream
+     * as it is read from the server.
+     * <p>
+     * The text is written as UTF-8 without being held in memory, which
+     * suits very long database descriptions. The command is not retried by
+     * the ReconnectPolicy, since part of the text may already have been
+     * written.
+     *
+     * @param database the database for which to get information
+     * @param out the stream to write the information to
+     * @throws IOException from associated Connection Socket or out
+     * @return the number of bytes written
+     *
+     */
+    public long transferDatabaseInfo(String database, OutputStream out)
+          throws IOException {
+        CountingOutputStream counter = new CountingOutputStream(out);
         Command command = commandBuilder(SHOW_INFO)
-                            .setDatabase(database.getName())
+                            .setDatabase(database)
+                            .setHeaderHandler(header ->
+                                Body.streamTo(counter))
                             .build();
-        List<Response> responses = command.execute(mConnection);
-        return responses.get(0).getRawData();
+        command.execute(mConnection);
+        return counter.mCount;
     }
 
     /**
@@ -335,8 +601,17 @@ public class JDictClient {
      *
      */
     public List<Strategy> getStrategies() throws IOException {
-        Command command = commandBuilder(SHOW_STRATEGIES).build();
-        List<Response> responses = command.execute(mConnection);
+        if (mMetadataCache == null && mCoalescer == null)
+          return fetchStrategies();
+        if (mMetadataCache == null)
+          return coalesce(this::fetchStrategies, SHOW_STRATEGIES);
+        return copyOf(mMetadataCache.get(mConnection,
+                                         MetadataCache.STRATEGIES,
+                                         mDeadline, this::fetchStrategies));
+    }
+
+    private List<Strategy> fetchStrategies() throws IOException {
+        List<Response> responses = execute(fixedCommand(SHOW_STRATEGIES));
         return (List<Strategy>) responses.get(0).getData();
     }
 
@@ -349,12 +624,7 @@ public class JDictClient {
      *
      */
     public List<Definition> define(String word) throws IOException {
-        Command command = commandBuilder(DEFINE)
-                            .setParamString(word)
-                            .build();
-        List<Response> responses = command.execute(mConnection);
-        if (responses.get(0).getStatus() == 552) return null;
-        return collect_definitions(responses);
+        return define(word, null);
     }
 
     /**
@@ -368,15 +638,152 @@ public class JDictClient {
      */
     public List<Definition> define(String word, String database)
           throws IOException {
+        DictCache.Key key = null;
+        if (mCache != null) {
+            key = DictCache.defineKey(mConnection.getHost(),
+                                      mConnection.getPort(), word, database);
+            if (mCache.isMiss(key))
+              return null;
+            List<Definition> cached = mCache.get(key);
+            if (cached != null)
+              return cached;
+        }
+
+        if (mCoalescer == null)
+          return fetchDefinitions(word, database, key);
+        DictCache.Key cacheKey = key;
+        return coalesce(() -> fetchDefinitions(word, database, cacheKey),
+                        DEFINE, word, database);
+    }
+
+    private List<Definition> fetchDefinitions(String word, String database,
+                                              DictCache.Key key)
+          throws IOException {
         Command command = commandBuilder(DEFINE)
                             .setParamString(word)
                             .setDatabase(database)
                             .build();
-        List<Response> responses = command.execute(mConnection);
+        List<Response> responses = execute(command);
+        if (responses.get(0).getStatus() == 552) {
+            if (key != null)
+              mCache.putMiss(key);
+            return null;
+        }
+
+        List<Definition> definitions = collect_definitions(responses);
+        if (key != null)
+          mCache.put(key, definitions);
+        return definitions;
+    }
+
+    /**
+     * Get definitions for word from any of several databases.
+     * <p>
+     * All databases are searched with a single DEFINE command and the
+     * definitions from other databases are skipped as they arrive, without
+     * being decoded.
+     *
+     * @param word the word to define
+     * @param databases the names of the databases to keep definitions from
+     * @throws IOException from associated Connection Socket
+     * @return a list of definitions for word or null if no word found
+     *
+     */
+    public List<Definition> defineIn(String word,
+                                     Collection<String> databases)
+          throws IOException {
+        Command command = commandBuilder(DEFINE)
+                            .setParamString(word)
+                            .setHeaderHandler(header -> {
+                                Definition definition =
+                                  (Definition) header.getData();
+                                String name = definition.getDatabase()
+                                                        .getName();
+                                return databases.contains(name) ? Body.KEEP
+                                  : Body.DISCARD;
+                            })
+                            .build();
+        List<Response> responses = execute(command);
         if (responses.get(0).getStatus() == 552) return null;
         return collect_definitions(responses);
     }
 
+    /**
+     * Get definitions for word, passing each definition to a consumer as
+     * soon as it has been read.
+     * <p>
+     * When several databases define the word, the first definition can be
+     * used while the server is still sending the rest. The command is not
+     * retried by the ReconnectPolicy, since some definitions may already
+     * have been consumed.
+     *
+     * @param word the word to define
+     * @param database the database in which to find the definition, or
+     *        null for all databases
+     * @param consumer the consumer of each definition
+     * @throws IOException from associated Connection Socket
+     * @return the number of definitions found
+     *
+     */
+    public int define(String word, String database,
+                      Consumer<? super Definition> consumer)
+          throws IOException {
+        int[] count = new int[1];
+        Command command = commandBuilder(DEFINE)
+                            .setParamString(word)
+                            .setDatabase(database)
+                            .setResponseHandler(response -> {
+                                if (!mExceptionHandler.handle(response))
+                                  return false;
+                                if (response.getStatus() != 151)
+                                  return true;
+                                count[0] += 1;
+                                consumer.accept(
+                                    (Definition) response.getData());
+                                return false;
+                            })
+                            .build();
+        command.execute(mConnection);
+        return count[0];
+    }
+
+    /**
+     * Get definitions for word, copying the text of each definition to a
+     * stream as it is read from the server.
+     * <p>
+     * For each definition the function is given a Definition holding the
+     * word and database, with null text, and returns the stream to write
+     * the UTF-8 text to. Returning null skips the definition without
+     * reading it into memory. The command is not retried by the
+     * ReconnectPolicy.
+     *
+     * @param word the word to define
+     * @param database the database in which to find the definition, or
+     *        null for all databases
+     * @param output chooses the stream for each definition's text
+     * @throws IOException from associated Connection Socket or a stream
+     * @return the number of definitions found
+     *
+     */
+    public int transferDefinitions(String word, String database,
+          Function<? super Definition, ? extends OutputStream> output)
+          throws IOException {
+        int[] count = new int[1];
+        Command command = commandBuilder(DEFINE)
+                            .setParamString(word)
+                            .setDatabase(database)
+                            .setHeaderHandler(header -> {
+                                count[0] += 1;
+                                OutputStream out = output.apply(
+                                    (Definition) header.getData());
+                                return out == null ? Body.DISCARD
+                                  : Body.streamTo(out);
+                            })
+                            .build();
+        command.execute(mConnection);
+        return count[0];
+    }
+
     /**
      * Match word using requested strategy.
      *
@@ -403,13 +810,184 @@ public class JDictClient {
      */
     public List<Match> match(String word, String strategy, String database)
           throws IOException {
+        DictCache.Key key = null;
+        if (mCache != null) {
+            key = DictCache.matchKey(mConnection.getHost(),
+                                     mConnection.getPort(), word, strategy,
+                                     database);
+            if (mCache.isMiss(key))
+              return null;
+            List<Match> cached = mCache.get(key);
+            if (cached != null)
+              return cached;
+        }
+
+        if (mCoalescer == null)
+          return fetchMatches(word, strategy, database, key);
+        DictCache.Key cacheKey = key;
+        return coalesce(
+            () -> fetchMatches(word, strategy, database, cacheKey),
+            MATCH, word, strategy, database);
+    }
+
+    private List<Match> fetchMatches(String word, String strategy,
+                                     String database, DictCache.Key key)
+          throws IOException {
         Command command = commandBuilder(MATCH)
                             .setParamString(word)
                             .setStrategy(strategy)
                             .setDatabase(database)
+                            .setRetainRawData(false)
                             .build();
-        List<Response> responses = command.execute(mConnection);
-        return (List<Match>) responses.get(0).getData();
+        List<Response> responses = execute(command);
+        List<Match> matches = (List<Match>) responses.get(0).getData();
+        if (key != null && matches != null)
+          mCache.put(key, matches);
+        else if (key != null && responses.get(0).getStatus() == 552)
+          mCache.putMiss(key);
+        return matches;
+    }
+
+    /**
+     * Match word using requested strategy, returning the matches in a
+     * compact MatchList.
+     * <p>
+     * Suited to large results kept in memory, such as prefix matches used
+     * for completion.
+     *
+     * @param word the word to match
+     * @param strategy the strategy to use for matching
+     * @param database the database to search, or null for all databases
+     * @throws IOException from associated Connection Socket
+     * @return a read-only list of matches or null if no matches found
+     *
+     */
+    public MatchList matchCompact(String word, String strategy,
+                                  String database)
+          throws IOException {
+        Command command = commandBuilder(MATCH)
+                            .setParamString(word)
+                            .setStrategy(strategy)
+                            .setDatabase(database)
+                            .setRetainRawData(false)
+                            .setCompactMatches(true)
+                            .build();
+        List<Response> responses = execute(command);
+        return (MatchList) responses.get(0).getData();
+    }
+
+    /**
+     * Match word using requested strategy, passing each match to a
+     * consumer as soon as it is read.
+     * <p>
+     * Matches are not collected into a list, so memory use stays constant
+     * however many words match. The command is not retried by the
+     * ReconnectPolicy, since some matches may already have been consumed.
+     *
+     * @param word the word to match
+     * @param strategy the strategy to use for matching
+     * @param database the database to search
+     * @param consumer the consumer of each match
+     * @throws IOException from associated Connection Socket
+     * @return the number of matches found
+     *
+     */
+    public int match(String word, String strategy, String database,
+                     Consumer<? super Match> consumer)
+          throws IOException {
+        int[] count = new int[1];
+        Command command = commandBuilder(MATCH)
+                            .setParamString(word)
+                            .setStrategy(strategy)
+                            .setDatabase(database)
+                            .setElementConsumer(element -> {
+                                count[0] += 1;
+                                consumer.accept((Match) element);
+                            })
+                            .build();
+        execute(command);
+        return count[0];
+    }
+
+    /**
+     * Get definitions for several words, pipelining the requests.
+     * <p>
+     * The DEFINE commands are sent without waiting for each response, which
+     * avoids a round trip per word.
+     *
+     * @param words the words to define
+     * @throws IOException from associated Connection Socket
+     * @return a list of definitions for each word, in the same order as
+     *         words, with null for each word not found
+     *
+     */
+    public List<List<Definition>> defineAll(List<String> words)
+          throws IOException {
+        return defineAll(words, null);
+    }
+
+    /**
+     * Get definitions for several words, pipelining the requests.
+     *
+     * @param words the words to define
+     * @param database the database in which to find the definitions
+     * @throws IOException from associated Connection Socket
+     * @return a list of definitions for each word, in the same order as
+     *         words, with null for each word not found
+     *
+     */
+    public List<List<Definition>> defineAll(List<String> words,
+                                            String database)
+          throws IOException {
+        Command.Batch batch = new Command.Batch().setDepth(mPipelineDepth)
+                                                 .setDeadline(mDeadline);
+        for (String word : words) {
+            batch.add(commandBuilder(DEFINE)
+                        .setParamString(word)
+                        .setDatabase(database)
+                        .build());
+        }
+
+        List<List<Definition>> results = new ArrayList<>(words.size());
+        for (List<Response> responses : execute(batch)) {
+            if (responses.get(0).getStatus() == 552)
+              results.add(null);
+            else
+              results.add(collect_definitions(responses));
+        }
+        return results;
+    }
+
+    /**
+     * Match several words using requested strategy, pipelining the
+     * requests.
+     *
+     * @param words the words to match
+     * @param strategy the strategy to use for matching
+     * @param database the database to search
+     * @throws IOException from associated Connection Socket
+     * @return a list of matches for each word, in the same order as words,
+     *         with null for each word without matches
+     *
+     */
+    public List<List<Match>> matchAll(List<String> words, String strategy,
+                                      String database)
+          throws IOException {
+        Command.Batch batch = new Command.Batch().setDepth(mPipelineDepth)
+                                                 .setDeadline(mDeadline);
+        for (String word : words) {
+            batch.add(commandBuilder(MATCH)
+                        .setParamString(word)
+                        .setStrategy(strategy)
+                        .setDatabase(database)
+                        .setRetainRawData(false)
+                        .build());
+        }
+
+        List<List<Match>> results = new ArrayList<>(words.size());
+        for (List<Response> responses : execute(batch))
+          results.add((List<Match>) responses.get(0).getData());
+        return results;
     }
 
     /**
@@ -419,8 +997,7 @@ public class JDictClient {
      *
      */
     private Response quit() throws IOException {
-        Command command = commandBuilder(QUIT).build();
-        List<Response> responses = command.execute(mConnection);
+        List<Response> responses = fixedCommand(QUIT).execute(mConnection);
         return responses.get(0);
     }
 
@@ -430,6 +1007,34 @@ public class JDictClient {
         return rb.getString(name);
     }
 
+    /**
+     * Load a result through the RequestCoalescer, if there is one.
+     * <p>
+     * Callers on a hot path check for a coalescer first and load the
+     * result directly without one, which saves building the loader and
+     * request array for every call.
+     *
+     * @param loader sends the request to the server
+     * @param request the command type and parameters of the request
+     *
+     */
+    private <T> T coalesce(Loader<T> loader, Object... request)
+          throws IOException {
+        if (mCoalescer == null)
+          return loader.load();
+
+        Object key = RequestCoalescer.key(mConnection.getHost(),
+                                          mConnection.getPort(),
+                                          Arrays.asList(request));
+        return mCoalescer.execute(key, mConnection.getHost(),
+                                  mConnection.deadlineAfter(mDeadline),
+                                  loader);
+    }
+
+    private static <T> List<T> copyOf(List<T> list) {
+        return list == null ? null : new ArrayList<>(list);
+    }
+
     private ArrayList<Definition> collect_definitions(List<Response> responses)
     {
         ListIterator<Response> itr = responses.listIterator(1);
@@ -442,9 +1047,140 @@ public class JDictClient {
         return definitions;
     }
 
+    /**
+     * Execute a command, reconnecting and retrying according to the
+     * ReconnectPolicy if the connection is lost.
+     *
+     */
+    private List<Response> execute(Command command) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                if (attempt > 0)
+                  reconnect();
+                return command.execute(mConnection);
+            } catch (IOException e) {
+                backoff(e, attempt, command.isIdempotent());
+            }
+        }
+    }
+
+    /**
+     * Execute a batch, reconnecting and retrying according to the
+     * ReconnectPolicy if the connection is lost.
+     *
+     */
+    private List<List<Response>> execute(Command.Batch batch)
+          throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                if (attempt > 0)
+                  reconnect();
+                return batch.execute(mConnection);
+            } catch (IOException e) {
+                backoff(e, attempt, batch.isIdempotent());
+            }
+        }
+    }
+
+    /**
+     * Wait before the next reconnection attempt, or rethrow the exception if
+     * the command should not be retried.
+     *
+     */
+    private void backoff(IOException e, int attempt, boolean idempotent)
+          throws IOException {
+        if (mReconnectPolicy == null || !idempotent || !isReconnectable(e)
+            || attempt >= mReconnectPolicy.getMaxRetries())
+          throw e;
+
+        try {
+            Thread.sleep(mReconnectPolicy.getDelay(attempt));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                "Interrupted while reconnecting to " + mConnection);
+        }
+    }
+
+    /**
+     * Replace the current connection with a new one, restoring the CLIENT
+     * and AUTH state of the old one.
+     *
+     */
+    private void reconnect() throws IOException {
+        Connection old = mConnection;
+        try {
+            old.close();
+        } catch (IOException e) {
+            /* The old connection is being replaced regardless. */
+        }
+
+        mConnection = new Connection(old.getHost(), old.getPort(),
+                                     old.getTimeout(), old.getConfig());
+        connect();
+        if (mUsername != null && !authenticate(mUsername, mSecret)) {
+            throw new DictAuthException(mConnection.getHost(), null,
+                "Authentication failed after reconnecting.");
+        }
+    }
+
+    /**
+     * Check whether an exception means the connection has been lost.
+     *
+     */
+    private static boolean isReconnectable(IOException e) {
+        if (e instanceof InterruptedIOException
+            || e instanceof DictTimeoutException)
+          return false;
+        if (e instanceof DictException) {
+            Integer status = ((DictException) e).getStatus();
+            return status != null && (status == 420 || status == 421);
+        }
+        return true;
+    }
+
     private Command.Builder commandBuilder(Type commandType) {
         return new Command.Builder(commandType)
-                          .setResponseHandler(new ThrowExceptionHandler());
+                          .setResponseHandler(mExceptionHandler)
+                          .setDeadline(mDeadline);
+    }
+
+    /**
+     * Get the cached Command for a command type that takes no parameters.
+     * <p>
+     * The cache is cleared when the deadline changes, since the deadline
+     * is part of each Command. Commands with parameters, such as DEFINE and
+     * MATCH, are still built for each call.
+     *
+     */
+    private Command fixedCommand(Type commandType) {
+        Command command = mFixedCommands.get(commandType);
+        if (command == null) {
+            command = commandBuilder(commandType).setRetainRawData(false)
+                                                 .build();
+            mFixedCommands.put(commandType, command);
+        }
+        return command;
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long mCount;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            mCount += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            mCount += len;
+        }
     }
 
     private class ThrowExceptionHandler implements ResponseHandler {
@@ -0,0 +1,851 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread-safe pool of connected JDictClients.
+ * <p>
+ * Clients are pooled per host and port. A client is only added to the pool
+ * after the connection banner has been read and the CLIENT command has been
+ * sent, so a borrowed client can be used immediately. Clients that have sat
+ * idle for longer than the validation interval are checked with a STATUS
+ * command before being lent out again, and clients that have sat idle for
+ * longer than the maximum idle time are closed.
+ * <p>
+ * The pool's lock is never held during network I/O, and waiting threads
+ * park on a Condition rather than a monitor, so virtual threads blocked in
+ * acquire() do not pin their carrier threads.
+ *
+ * <pre>
+ * {@code
+ * JDictClient client = pool.acquire("dict.org");
+ * try {
+ *     client.define("word");
+ * } finally {
+ *     pool.release(client);
+ * }
+ * }
+ * </pre>
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class JDictClientPool {
+    /** The default maximum number of connections per host. */
+    public static final int DEFAULT_MAX_CONNECTIONS = 8;
+
+    /** The default maximum idle time in milliseconds. */
+    public static final long DEFAULT_MAX_IDLE_TIME = 60000;
+
+    /** The default validation interval in milliseconds. */
+    public static final long DEFAULT_VALIDATION_INTERVAL = 5000;
+
+    /** The default time to wait for a free connection in milliseconds. */
+    public static final long DEFAULT_MAX_WAIT = 10000;
+
+    private final int mMaxConnections;
+    private final long mMaxIdleTime;
+    private final long mValidationInterval;
+    private final long mMaxWait;
+    private final int mTimeout;
+    private final ReconnectPolicy mReconnectPolicy;
+    private final ConnectionConfig mConfig;
+    private final DictCache mCache;
+    private final MetadataCache mMetadataCache;
+    private final RequestCoalescer mCoalescer;
+
+    /** Shares metadata loads between threads before a client is borrowed. */
+    private final RequestCoalescer mMetadataLoads = new RequestCoalescer();
+
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final Map<String, HostPool> mHostPools = new HashMap<>();
+    private final Map<JDictClient, HostPool> mLent = new IdentityHashMap<>();
+    private boolean mClosed;
+
+    /**
+     * Construct a new JDictClientPool using the default settings.
+     *
+     */
+    public JDictClientPool() {
+        this(new Builder());
+    }
+
+    private JDictClientPool(Builder builder) {
+        mMaxConnections = builder.mMaxConnections;
+        mMaxIdleTime = TimeUnit.MILLISECONDS.toNanos(builder.mMaxIdleTime);
+        mValidationInterval =
+          TimeUnit.MILLISECONDS.toNanos(builder.mValidationInterval);
+        mMaxWait = TimeUnit.MILLISECONDS.toNanos(builder.mMaxWait);
+        mTimeout = builder.mTimeout;
+        mReconnectPolicy = builder.mReconnectPolicy;
+        mConfig = builder.mConfig;
+        mCache = builder.mCache;
+        mMetadataCache = builder.mMetadataCache;
+        mCoalescer = builder.mCoalescer;
+    }
+
+    /**
+     * Borrow a connected client for the specified host.
+     *
+     * @param host DICT host
+     * @throws IOException from associated Connection Socket
+     * @return a connected JDictClient
+     *
+     */
+    public JDictClient acquire(String host) throws IOException {
+        return acquire(host, Connection.DEFAULT_PORT);
+    }
+
+    /**
+     * Borrow a connected client for the specified host and port.
+     * <p>
+     * An idle client is returned if one is available. Otherwise a new
+     * connection is opened, unless the host already has the maximum number
+     * of connections open, in which case this method waits for another
+     * thread to release one.
+     *
+     * @param host DICT host
+     * @param port port number
+     * @throws DictPoolTimeoutException when no connection became available
+     *         within the maximum wait time
+     * @throws IOException from associated Connection Socket
+     * @return a connected JDictClient
+     *
+     */
+    public JDictClient acquire(String host, int port) throws IOException {
+        long deadline = System.nanoTime() + mMaxWait;
+        while (true) {
+            HostPool pool;
+            PooledClient pooled = null;
+            List<JDictClient> expired = new ArrayList<>();
+            mLock.lock();
+            try {
+                pool = hostPool(host, port);
+                while (true) {
+                    ensureOpen();
+                    pool.evictIdle(System.nanoTime(), mMaxIdleTime, expired);
+                    pooled = pool.mIdle.pollFirst();
+                    if (pooled != null || pool.mTotal < mMaxConnections)
+                      break;
+
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new DictPoolTimeoutException(
+                            pool.toString());
+                    }
+                    pool.mAvailable.awaitNanos(remaining);
+                }
+
+                if (pooled == null)
+                  pool.mTotal += 1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(
+                    "Interrupted waiting for a connection to " + host);
+            } finally {
+                mLock.unlock();
+                closeAll(expired);
+            }
+
+            if (pooled == null)
+              return open(pool);
+
+            if (validate(pooled)) {
+                mLock.lock();
+                try {
+                    mLent.put(pooled.mClient, pool);
+                } finally {
+                    mLock.unlock();
+                }
+                return pooled.mClient;
+            }
+            discard(pool, pooled.mClient);
+        }
+    }
+
+    /**
+     * Return a borrowed client to the pool.
+     * <p>
+     * Settings a borrower may have changed, such as the deadline, pipeline
+     * depth, reconnect policy and caches, are reset to the pool's own so
+     * the next borrower starts from the same state. A client that has been
+     * authenticated is closed instead, since its AUTH session belongs to
+     * the borrower that opened it.
+     *
+     * @param client the client to return
+     *
+     */
+    public void release(JDictClient client) {
+        boolean close = false;
+        mLock.lock();
+        try {
+            HostPool pool = lentPool(client);
+            if (mClosed || client.getConnection().isClosed()
+                || client.isAuthenticated()) {
+                pool.mTotal -= 1;
+                close = true;
+            } else {
+                configure(client);
+                pool.mIdle.addFirst(
+                    new PooledClient(client, System.nanoTime()));
+            }
+            pool.mAvailable.signal();
+        } finally {
+            mLock.unlock();
+        }
+
+        if (close)
+          closeQuietly(client);
+    }
+
+    /**
+     * Remove a borrowed client from the pool and close its connection.
+     * <p>
+     * Use this instead of release() when the connection is in an unknown
+     * state, for example after an I/O error part way through a response.
+     *
+     * @param client the client to remove
+     *
+     */
+    public void invalidate(JDictClient client) {
+        HostPool pool;
+        mLock.lock();
+        try {
+            pool = lentPool(client);
+        } finally {
+            mLock.unlock();
+        }
+        discard(pool, client);
+    }
+
+    /**
+     * Borrow a client, run an operation with it and return it to the pool.
+     * <p>
+     * If the operation fails in a way that leaves the connection unusable
+     * the client is invalidated rather than returned.
+     *
+     * @param host DICT host
+     * @param port port number
+     * @param operation the operation to perform
+     * @throws IOException from the operation or associated Connection Socket
+     * @return the result of the operation
+     *
+     */
+    public <T> T execute(String host, int port, ClientOperation<T> operation)
+          throws IOException {
+        JDictClient client = acquire(host, port);
+        boolean reusable = false;
+        try {
+            T result = operation.execute(client);
+            reusable = true;
+            return result;
+        } catch (DictCoalescedException e) {
+            /* The failed command was sent on another connection. */
+            reusable = true;
+            throw e;
+        } catch (DictException e) {
+            reusable = isReusable(e);
+            throw e;
+        } finally {
+            if (reusable)
+              release(client);
+            else
+              invalidate(client);
+        }
+    }
+
+    /**
+     * Run an operation that performs a single request, sharing it with
+     * any identical request already running.
+     * <p>
+     * If the pool has a RequestCoalescer and an operation with an equal
+     * request key is already running on the same server, this method
+     * waits for its result without borrowing a client. Otherwise it
+     * behaves like execute(host, port, operation).
+     *
+     * @param host DICT host
+     * @param port port number
+     * @param request identifies the request, for example a List of the
+     *        command name and its parameters, or null if the operation
+     *        must not be shared
+     * @param operation the operation to perform
+     * @throws IOException from the operation or associated Connection Socket
+     * @return the result of the operation, with lists copied for each
+     *         caller
+     *
+     */
+    public <T> T execute(String host, int port, Object request,
+                         ClientOperation<T> operation) throws IOException {
+        if (mCoalescer == null || request == null)
+          return execute(host, port, operation);
+        return mCoalescer.execute(RequestCoalescer.key(host, port, request),
+                                  host, 0,
+                                  () -> execute(host, port, operation));
+    }
+
+    /**
+     * Get list of available databases from a server.
+     * <p>
+     * With a MetadataCache, a cached result is returned without borrowing
+     * a client, and threads asking for a result another thread is already
+     * loading wait for it without holding a connection. Otherwise the
+     * request is shared like execute() with a request key.
+     *
+     * @param host DICT host
+     * @param port port number
+     * @throws IOException from associated Connection Socket
+     * @return list of dictionaries
+     *
+     */
+    public List<Database> getDatabases(String host, int port)
+          throws IOException {
+        return executeMetadata(host, port, MetadataCache.DATABASES,
+                               client -> client.getDatabases());
+    }
+
+    /**
+     * Get list of available match strategies from a server.
+     * <p>
+     * Cached and concurrent requests are handled as by getDatabases().
+     *
+     * @param host DICT host
+     * @param port port number
+     * @throws IOException from associated Connection Socket
+     * @return list of strategies
+     *
+     */
+    public List<Strategy> getStrategies(String host, int port)
+          throws IOException {
+        return executeMetadata(host, port, MetadataCache.STRATEGIES,
+                               client -> client.getStrategies());
+    }
+
+    /**
+     * Get detailed database info for the specified database on a server.
+     * <p>
+     * Cached and concurrent requests are handled as by getDatabases().
+     *
+     * @param host DICT host
+     * @param port port number
+     * @param database the database for which to get information
+     * @throws IOException from associated Connection Socket
+     * @return database info string
+     *
+     */
+    public String getDatabaseInfo(String host, int port, String database)
+          throws IOException {
+        return executeMetadata(host, port, MetadataCache.info(database),
+                               client -> client.getDatabaseInfo(database));
+    }
+
+    /**
+     * Run an operation that loads a MetadataCache result, checking the
+     * cache and sharing the load before a client is borrowed.
+     * <p>
+     * The cache is checked under the banner of the most recently opened
+     * connection to the server. Only the thread that loads the result
+     * borrows a client; its MetadataCache lookup then uses the banner of
+     * the connection it was given.
+     *
+     * @param name the name of the result in the MetadataCache
+     * @param operation loads the result with a borrowed client
+     *
+     */
+    @SuppressWarnings("unchecked")
+    <T> T executeMetadata(String host, int port, String name,
+                          ClientOperation<T> operation) throws IOException {
+        if (mMetadataCache == null)
+          return execute(host, port, Arrays.asList(name), operation);
+
+        Banner banner;
+        mLock.lock();
+        try {
+            HostPool pool = mHostPools.get(key(host, port));
+            banner = pool == null ? null : pool.mBanner;
+        } finally {
+            mLock.unlock();
+        }
+
+        if (banner != null) {
+            Object value =
+              mMetadataCache.getIfPresent(host, port, banner, name);
+            if (value != null)
+              return (T) RequestCoalescer.copy(value);
+        }
+        return mMetadataLoads.execute(
+            RequestCoalescer.key(host, port, name), host, 0,
+            () -> execute(host, port, operation));
+    }
+
+    /**
+     * Close clients that have been idle for longer than the maximum idle
+     * time.
+     * <p>
+     * Idle clients are also evicted whenever a client is acquired, so this
+     * only needs to be called when the pool may sit unused for long periods.
+     *
+     */
+    public void evictIdle() {
+        List<JDictClient> expired = new ArrayList<>();
+        mLock.lock();
+        try {
+            long now = System.nanoTime();
+            for (HostPool pool : mHostPools.values()) {
+                pool.evictIdle(now, mMaxIdleTime, expired);
+                pool.mAvailable.signalAll();
+            }
+        } finally {
+            mLock.unlock();
+        }
+        closeAll(expired);
+    }
+
+    /**
+     * Close the pool.
+     * <p>
+     * Idle clients are closed immediately. Borrowed clients are closed when
+     * they are released.
+     *
+     */
+    public void close() {
+        List<JDictClient> idle = new ArrayList<>();
+        mLock.lock();
+        try {
+            mClosed = true;
+            for (HostPool pool : mHostPools.values()) {
+                for (PooledClient pooled : pool.mIdle)
+                  idle.add(pooled.mClient);
+                pool.mTotal -= pool.mIdle.size();
+                pool.mIdle.clear();
+                pool.mAvailable.signalAll();
+            }
+        } finally {
+            mLock.unlock();
+        }
+        closeAll(idle);
+    }
+
+    /**
+     * Get the coalescer shared by concurrent identical requests.
+     *
+     * @return the coalescer, or null if requests are not coalesced
+     *
+     */
+    public RequestCoalescer getRequestCoalescer() {
+        return mCoalescer;
+    }
+
+    /**
+     * Get the maximum number of connections opened to each host.
+     *
+     * @return maximum connections per host
+     *
+     */
+    public int getMaxConnectionsPerHost() {
+        return mMaxConnections;
+    }
+
+    /**
+     * Get the number of idle clients pooled for a host.
+     *
+     * @param host DICT host
+     * @param port port number
+     * @return number of idle clients
+     *
+     */
+    public int getIdleCount(String host, int port) {
+        mLock.lock();
+        try {
+            HostPool pool = mHostPools.get(key(host, port));
+            return pool == null ? 0 : pool.mIdle.size();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of open connections, idle or borrowed, for a host.
+     *
+     * @param host DICT host
+     * @param port port number
+     * @return number of open connections
+     *
+     */
+    public int getConnectionCount(String host, int port) {
+        mLock.lock();
+        try {
+            HostPool pool = mHostPools.get(key(host, port));
+            return pool == null ? 0 : pool.mTotal;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private JDictClient open(HostPool pool) throws IOException {
+        JDictClient client = new JDictClient(
+            new Connection(pool.mHost, pool.mPort, mTimeout, mConfig));
+        configure(client);
+        boolean connected = false;
+        try {
+            client.connect();
+            connected = true;
+        } finally {
+            mLock.lock();
+            try {
+                if (connected) {
+                    mLent.put(client, pool);
+                    pool.mBanner = client.getConnection().getBanner();
+                } else {
+                    pool.mTotal -= 1;
+                    pool.mAvailable.signal();
+                }
+            } finally {
+                mLock.unlock();
+            }
+            if (!connected)
+              closeConnection(client);
+        }
+        return client;
+    }
+
+    /**
+     * Apply the pool's settings to a client, replacing any left behind by
+     * a previous borrower.
+     *
+     */
+    private void configure(JDictClient client) {
+        if (client.getDeadline() != 0)
+          client.setDeadline(0);
+        client.setPipelineDepth(Command.Batch.DEFAULT_DEPTH);
+        client.setReconnectPolicy(mReconnectPolicy);
+        client.setCache(mCache);
+        client.setMetadataCache(mMetadataCache);
+        client.setRequestCoalescer(null);
+    }
+
+    private boolean validate(PooledClient pooled) {
+        if (pooled.mClient.getConnection().isClosed())
+          return false;
+        if (System.nanoTime() - pooled.mIdleSince < mValidationInterval)
+          return true;
+
+        try {
+            pooled.mClient.getStatus();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void discard(HostPool pool, JDictClient client) {
+        mLock.lock();
+        try {
+            pool.mTotal -= 1;
+            pool.mAvailable.signal();
+        } finally {
+            mLock.unlock();
+        }
+        closeConnection(client);
+    }
+
+    private HostPool lentPool(JDictClient client) {
+        HostPool pool = mLent.remove(client);
+        if (pool == null) {
+            throw new RuntimeException(
+                "Client was not acquired from this pool.");
+        }
+        return pool;
+    }
+
+    private HostPool hostPool(String host, int port) {
+        String key = key(host, port);
+        HostPool pool = mHostPools.get(key);
+        if (pool == null) {
+            pool = new HostPool(host, port, mLock.newCondition());
+            mHostPools.put(key, pool);
+        }
+        return pool;
+    }
+
+    private void ensureOpen() {
+        if (mClosed)
+          throw new RuntimeException("JDictClientPool has been closed.");
+    }
+
+    private static boolean isReusable(DictException e) {
+        Integer status = e.getStatus();
+        return status != null && status != 420 && status != 421;
+    }
+
+    private static String key(String host, int port) {
+        return host + ":" + port;
+    }
+
+    private static void closeAll(List<JDictClient> clients) {
+        for (JDictClient client : clients)
+          closeQuietly(client);
+    }
+
+    private static void closeQuietly(JDictClient client) {
+        try {
+            client.close();
+        } catch (IOException e) {
+            /* The connection is closed below regardless. */
+        } finally {
+            closeConnection(client);
+        }
+    }
+
+    private static void closeConnection(JDictClient client) {
+        try {
+            client.getConnection().close();
+        } catch (IOException e) {
+            /* Nothing more can be done with a broken connection. */
+        }
+    }
+
+    private static class HostPool {
+        private final String mHost;
+        private final int mPort;
+
+        /** Idle clients, most recently used first. */
+        private final ArrayDeque<PooledClient> mIdle = new ArrayDeque<>();
+
+        /** Number of open connections, idle, borrowed or being opened. */
+        private int mTotal;
+
+        /**
+         * Signalled once for each client returned or connection closed, so
+         * a release wakes one waiting thread rather than all of them.
+         */
+        private final Condition mAvailable;
+
+        /** Banner of the most recently opened connection. */
+        private Banner mBanner;
+
+        HostPool(String host, int port, Condition available) {
+            mHost = host;
+            mPort = port;
+            mAvailable = available;
+        }
+
+        void evictIdle(long now, long maxIdleTime,
+                       List<JDictClient> expired) {
+            /* Oldest idle clients are at the end of the queue. */
+            PooledClient pooled = mIdle.peekLast();
+            while (pooled != null && now - pooled.mIdleSince > maxIdleTime) {
+                mIdle.pollLast();
+                mTotal -= 1;
+                expired.add(pooled.mClient);
+                pooled = mIdle.peekLast();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return key(mHost, mPort);
+        }
+    }
+
+    private static class PooledClient {
+        private final JDictClient mClient;
+        private final long mIdleSince;
+
+        PooledClient(JDictClient client, long idleSince) {
+            mClient = client;
+            mIdleSince = idleSince;
+        }
+    }
+
+    /**
+     * Constructs and initializes an instance of JDictClientPool.
+     *
+     */
+    public static class Builder {
+        private int mMaxConnections = DEFAULT_MAX_CONNECTIONS;
+        private long mMaxIdleTime = DEFAULT_MAX_IDLE_TIME;
+        private long mValidationInterval = DEFAULT_VALIDATION_INTERVAL;
+        private long mMaxWait = DEFAULT_MAX_WAIT;
+        private int mTimeout = Connection.DEFAULT_TIMEOUT;
+        private ReconnectPolicy mReconnectPolicy;
+        private ConnectionConfig mConfig = ConnectionConfig.DEFAULT;
+        private DictCache mCache;
+        private MetadataCache mMetadataCache;
+        private RequestCoalescer mCoalescer;
+
+        /**
+         * Set the maximum number of connections opened to each host.
+         *
+         * @param maxConnections maximum connections per host
+         * @return the pool builder in progress
+         *
+         */
+        public Builder setMaxConnectionsPerHost(int maxConnections) {
+            if (maxConnections < 1)
+              throw new RuntimeException(
+                  "Maximum connections per host must be at least 1."
+                );
+
+            mMaxConnections = maxConnections;
+            return this;
+        }
+
+        /**
+         * Set how long a client may sit idle before it is closed.
+         *
+         * @param maxIdleTime maximum idle time in milliseconds
+         * @return the pool builder in progress
+         *
+         */
+        public Builder setMaxIdleTime(long maxIdleTime) {
+            mMaxIdleTime = maxIdleTime;
+            return this;
+        }
+
+        /**
+         * Set how long a client may sit idle before it is checked with a
+         * STATUS command prior to reuse.
+         *
+         * @param validationInterval validation interval in milliseconds
+         * @return the pool builder in progress
+         *
+         */
+        public Builder setValidationInterval(long validationInterval) {
+            mValidationInterval = validationInterval;
+            return this;
+        }
+
+        /**
+         * Set how long acquire() waits for a connection to become free when
+         * a host has reached its connection limit.
+         *
+         * @param maxWait maximum wait time in milliseconds
+         * @return the pool builder in progress
+         *
+         */
+        public Builder setMaxWait(long maxWait) {
+            mMaxWait = maxWait;
+            return this;
+        }
+
+        /**
+         * Set the connection timeout used for new connections.
+         *
+         * @param timeout connection timeout in milliseconds
+         * @return the pool builder in progress
+         *
+         */
+        public Builder setTimeout(int timeout) {
+            mTimeout = timeout;
+            return this;
+        }
+
+        /**
+         * Set the socket settings used for new connections.
+         *
+         * @param config socket and stream settings
+         * @return the pool builder in progress
+         *
+         */
+        public Builder setConnectionConfig(ConnectionConfig config) {
+            mConfig = config;
+            return this;
+        }
+
+        /**
+         * Set the reconnection policy given to each new client.
+         *
+         * @param policy the reconnection policy or null to disable
+         *        reconnection
+         * @return the pool builder in progress
+         *
+         */
+        public Builder setReconnectPolicy(ReconnectPolicy policy) {
+            mReconnectPolicy = policy;
+            return this;
+        }
+
+        /**
+         * Set the cache given to each new client.
+         * <p>
+         * Every client opened by the pool shares the cache.
+         *
+         * @param cache the cache, or null to disable caching
+         * @return the pool builder in progress
+         *
+         */
+        public Builder setCache(DictCache cache) {
+            mCache = cache;
+            return this;
+        }
+
+        /**
+         * Set the metadata cache given to each new client.
+         *
+         * @param cache the cache, such as MetadataCache.getShared(), or
+         *        null to disable caching
+         * @return the pool builder in progress
+         *
+         */
+        public Builder setMetadataCache(MetadataCache cache) {
+            mMetadataCache = cache;
+            return this;
+        }
+
+        /**
+         * Set the request coalescer used by execute() with a request key.
+         * <p>
+         * Concurrent identical requests then share a single command and a
+         * single borrowed connection; the waiting threads borrow none.
+         *
+         * @param coalescer the coalescer, or null to send every request
+         * @return the pool builder in progress
+         *
+         */
+        public Builder setRequestCoalescer(RequestCoalescer coalescer) {
+            mCoalescer = coalescer;
+            return this;
+        }
+
+        /**
+         * Return the built JDictClientPool instance.
+         *
+         * @return the JDictClientPool instance that was built
+         *
+         */
+        public JDictClientPool build() {
+            return new JDictClientPool(this);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.util.Arrays;
+
+/**
+ * Keeps a window of recent response times and estimates a percentile.
+ * <p>
+ * The percentile is recalculated after every few samples rather than on
+ * every call, since it is read once per request.
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+class LatencyTracker {
+    /** Number of response times kept. */
+    static final int WINDOW = 256;
+
+    /** Number of response times needed before a percentile is known. */
+    static final int MIN_SAMPLES = 16;
+
+    /** Number of new samples between percentile calculations. */
+    private static final int REFRESH = 16;
+
+    private final double mPercentile;
+    private final long[] mSamples = new long[WINDOW];
+    private int mCount;
+    private int mNext;
+    private int mSinceRefresh;
+    private long mValue = -1;
+
+    LatencyTracker(double percentile) {
+        mPercentile = percentile;
+    }
+
+    /**
+     * Record a response time.
+     *
+     * @param nanos response time in nanoseconds
+     *
+     */
+    synchronized void record(long nanos) {
+        mSamples[mNext] = nanos;
+        mNext = (mNext + 1) % WINDOW;
+        if (mCount < WINDOW)
+          mCount += 1;
+
+        mSinceRefresh += 1;
+        if (mCount >= MIN_SAMPLES
+            && (mValue < 0 || mSinceRefresh >= REFRESH)) {
+            long[] sorted = Arrays.copyOf(mSamples, mCount);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(mPercentile * mCount) - 1;
+            mValue = sorted[Math.max(0, index)];
+            mSinceRefresh = 0;
+        }
+    }
+
+    /**
+     * Get the estimated percentile.
+     *
+     * @return response time in nanoseconds or -1 if too few response times
+     *         have been recorded
+     *
+     */
+    synchronized long getPercentile() {
+        return mValue;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * A compact, read-only list of Matches.
+ * <p>
+ * Instead of holding a Match object and two Strings for every entry, the
+ * list stores the distinct database names once, an index into them for
+ * each entry, and the characters of every word in a single array. A Match
+ * is created each time an entry is retrieved, so large results such as
+ * prefix matches kept for completion take a fraction of the memory of an
+ * ArrayList of Matches. Use getWord() and getDatabase() to read entries
+ * without creating Matches.
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public final class MatchList extends AbstractList<Match>
+      implements RandomAccess {
+    private final String[] mDatabases;
+    private final int[] mDatabaseIndexes;
+
+    /** Words are mChars[mOffsets[i]] up to mChars[mOffsets[i + 1]]. */
+    private final char[] mChars;
+    private final int[] mOffsets;
+
+    /**
+     * Construct a new MatchList holding a copy of other Matches.
+     *
+     * @param matches the Matches to copy
+     *
+     */
+    public MatchList(List<? extends Match> matches) {
+        this(copy(matches));
+    }
+
+    private MatchList(Builder builder) {
+        int size = builder.mSize;
+        mDatabases = builder.mDatabases.toArray(new String[0]);
+        mDatabaseIndexes = Arrays.copyOf(builder.mDatabaseIndexes, size);
+        mOffsets = Arrays.copyOf(builder.mOffsets, size + 1);
+        mChars = Arrays.copyOf(builder.mChars, builder.mOffsets[size]);
+    }
+
+    @Override
+    public Match get(int index) {
+        return new Match(getDatabase(index), getWord(index));
+    }
+
+    @Override
+    public int size() {
+        return mDatabaseIndexes.length;
+    }
+
+    /**
+     * Get the database of an entry without creating a Match.
+     *
+     * @param index the index of the entry
+     * @return the name of the database the word was found in
+     *
+     */
+    public String getDatabase(int index) {
+        return mDatabases[mDatabaseIndexes[index]];
+    }
+
+    /**
+     * Get the word of an entry without creating a Match.
+     *
+     * @param index the index of the entry
+     * @return the matching word
+     *
+     */
+    public String getWord(int index) {
+        if (index < 0 || index >= size())
+          throw new IndexOutOfBoundsException("Index: " + index);
+
+        int start = mOffsets[index];
+        return new String(mChars, start, mOffsets[index + 1] - start);
+    }
+
+    private static Builder copy(List<? extends Match> matches) {
+        Builder builder = new Builder();
+        for (Match match : matches)
+          builder.add(match.getDatabase(), match.getWord());
+        return builder;
+    }
+
+    /**
+     * Collects entries for a MatchList as a MATCH response is read.
+     *
+     */
+    static final class Builder {
+        private final List<String> mDatabases = new ArrayList<>();
+        private final Map<String, Integer> mIndexes = new HashMap<>();
+        private int[] mDatabaseIndexes = new int[16];
+        private int[] mOffsets = new int[17];
+        private char[] mChars = new char[256];
+        private int mSize;
+
+        /**
+         * Add an entry to the list.
+         *
+         * @param database the database the word was found in
+         * @param word the matching word
+         *
+         */
+        void add(String database, String word) {
+            Integer index = mIndexes.get(database);
+            if (index == null) {
+                index = mDatabases.size();
+                mDatabases.add(database);
+                mIndexes.put(database, index);
+            }
+
+            if (mSize == mDatabaseIndexes.length) {
+                mDatabaseIndexes = Arrays.copyOf(mDatabaseIndexes, mSize * 2);
+                mOffsets = Arrays.copyOf(mOffsets, mSize * 2 + 1);
+            }
+
+            int start = mOffsets[mSize];
+            int end = start + word.length();
+            if (end > mChars.length)
+              mChars = Arrays.copyOf(mChars, Math.max(mChars.length * 2, end));
+            word.getChars(0, word.length(), mChars, start);
+
+            mDatabaseIndexes[mSize] = index;
+            mOffsets[mSize + 1] = end;
+            mSize += 1;
+        }
+
+        MatchList build() {
+            return new MatchList(this);
+        }
+    }
+}
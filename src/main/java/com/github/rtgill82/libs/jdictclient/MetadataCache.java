@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import com.github.rtgill82.libs.jdictclient.RequestCoalescer.Loader;
+
+/**
+ * A cache of the database list, strategy list and database information
+ * of DICT servers.
+ * <p>
+ * Results are kept per host and port and shared by every client using
+ * the cache, including clients opened by a JDictClientPool. Each banner
+ * text and set of capabilities seen on a server gets its own results, since
+ * a different banner usually means the server was upgraded or
+ * reconfigured. Clients connected before and after a rolling upgrade each
+ * keep using the results for their own banner. Once a server has shown
+ * more than four banners, the results of the oldest are dropped. Results
+ * otherwise expire after a time to live.
+ * <p>
+ * When several threads ask for the same result at once, only the first
+ * sends the command; the others wait for its result. A failed command is
+ * not cached, and every waiting thread receives its exception.
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class MetadataCache {
+    /** The default time to live of a cached result in milliseconds. */
+    public static final long DEFAULT_TTL = 60 * 60 * 1000;
+
+    /** The number of banners per server whose results are kept. */
+    private static final int MAX_BANNERS = 4;
+
+    /** Names of the results kept for each server. */
+    static final String DATABASES = "databases";
+    static final String STRATEGIES = "strategies";
+
+    private static final MetadataCache sShared = new MetadataCache();
+
+    private final long mTtl;
+    private final ConcurrentHashMap<String, Host> mHosts =
+      new ConcurrentHashMap<>();
+
+    /**
+     * Construct a new MetadataCache using the default settings.
+     *
+     */
+    public MetadataCache() {
+        this(new Builder());
+    }
+
+    private MetadataCache(Builder builder) {
+        mTtl = builder.mTtl;
+    }
+
+    /**
+     * Get the cache shared by the whole JVM.
+     *
+     * @return the shared MetadataCache
+     *
+     */
+    public static MetadataCache getShared() {
+        return sShared;
+    }
+
+    /**
+     * Remove every result from the cache.
+     *
+     */
+    public void clear() {
+        mHosts.clear();
+    }
+
+    /**
+     * Remove the results of a server from the cache.
+     *
+     * @param host the DICT host
+     * @param port the port number
+     *
+     */
+    public void invalidate(String host, int port) {
+        mHosts.remove(key(host, port));
+    }
+
+    /**
+     * Get a cached result for the server a connection is connected to,
+     * loading it if it is not cached.
+     *
+     * @param connection the connection the result would be loaded with
+     * @param name the name of the result
+     * @param timeout time allowed in milliseconds for a result loaded by
+     *        another thread to arrive, or 0 for no limit
+     * @param loader loads the result from the server
+     * @throws IOException from loader, or when the time expires
+     * @return the result
+     *
+     */
+    <T> T get(Connection connection, String name, long timeout,
+              Loader<T> loader) throws IOException {
+        String key = key(connection.getHost(), connection.getPort());
+        return get(key, connection.getBanner(), name,
+                   connection.deadlineAfter(timeout), loader);
+    }
+
+    /**
+     * Get the name of a database's information result.
+     *
+     */
+    static String info(String database) {
+        return "info " + database;
+    }
+
+    /**
+     * Get a cached result without loading it or waiting for it.
+     *
+     * @param host the DICT host
+     * @param port the port number
+     * @param banner the banner the result was loaded under
+     * @param name the name of the result
+     * @return the result, or null if it is not cached or is still loading
+     *
+     */
+    Object getIfPresent(String host, int port, Banner banner, String name) {
+        Host cached = mHosts.get(key(host, port));
+        if (cached == null)
+          return null;
+        Server server = cached.find(banner);
+        if (server == null)
+          return null;
+
+        Entry entry = server.mEntries.get(name);
+        if (entry == null || !entry.mFuture.isDone() || entry.isExpired()
+            || entry.mFuture.isCompletedExceptionally())
+          return null;
+        return entry.mFuture.getNow(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T get(String key, Banner banner, String name, long deadline,
+              Loader<T> loader) throws IOException {
+        Host host = mHosts.get(key);
+        if (host == null)
+          host = mHosts.computeIfAbsent(key, k -> new Host());
+        Server server = host.get(banner);
+
+        Entry entry = server.mEntries.get(name);
+        if (entry != null && entry.isExpired()) {
+            server.mEntries.remove(name, entry);
+            entry = null;
+        }
+
+        if (entry == null) {
+            Entry created = new Entry(
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mTtl));
+            entry = server.mEntries.putIfAbsent(name, created);
+            if (entry == null)
+              return load(server, name, created, loader);
+        }
+        return (T) RequestCoalescer.await(entry.mFuture, key, deadline);
+    }
+
+    private static <T> T load(Server server, String name, Entry entry,
+                              Loader<T> loader) throws IOException {
+        try {
+            T value = loader.load();
+            entry.mFuture.complete(value);
+            return value;
+        } catch (IOException | RuntimeException e) {
+            server.mEntries.remove(name, entry);
+            entry.mFuture.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static String key(String host, int port) {
+        return host + ":" + port;
+    }
+
+    /**
+     * The results of a host and port, one Server per banner seen, with the
+     * most recently added banner last.
+     *
+     */
+    private static final class Host {
+        private final CopyOnWriteArrayList<Server> mServers =
+          new CopyOnWriteArrayList<>();
+
+        Server get(Banner banner) {
+            Server server = find(banner);
+            if (server != null)
+              return server;
+
+            synchronized (this) {
+                server = find(banner);
+                if (server == null) {
+                    server = new Server(banner);
+                    mServers.add(server);
+                    if (mServers.size() > MAX_BANNERS)
+                      mServers.remove(0);
+                }
+                return server;
+            }
+        }
+
+        Server find(Banner banner) {
+            for (Server server : mServers) {
+                if (server.matches(banner))
+                  return server;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The results of a server, and the banner they were loaded under.
+     *
+     */
+    private static final class Server {
+        private final String mText;
+        private final List<String> mCapabilities;
+        private final ConcurrentHashMap<String, Entry> mEntries =
+          new ConcurrentHashMap<>();
+
+        Server(Banner banner) {
+            mText = banner == null ? null : banner.text;
+            mCapabilities = banner == null ? null : banner.capabilities;
+        }
+
+        boolean matches(Banner banner) {
+            if (banner == null)
+              return mText == null && mCapabilities == null;
+            return Objects.equals(mText, banner.text)
+                   && Objects.equals(mCapabilities, banner.capabilities);
+        }
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<Object> mFuture =
+          new CompletableFuture<>();
+
+        /** System.nanoTime() at which the entry expires. */
+        private final long mExpires;
+
+        Entry(long expires) {
+            mExpires = expires;
+        }
+
+        /** Results still being loaded never expire. */
+        boolean isExpired() {
+            return mFuture.isDone() && System.nanoTime() - mExpires >= 0;
+        }
+    }
+
+    /**
+     * Constructs and initializes an instance of MetadataCache.
+     *
+     */
+    public static class Builder {
+        private long mTtl = DEFAULT_TTL;
+
+        /**
+         * Set how long results are cached.
+         *
+         * @param ttl time to live in milliseconds, or 0 to load every
+         *        result from the server while still sharing results
+         *        between concurrent requests
+         * @return the cache builder in progress
+         *
+         */
+        public Builder setTtl(long ttl) {
+            mTtl = ttl;
+            return this;
+        }
+
+        /**
+         * Return the built MetadataCache instance.
+         *
+         * @return the MetadataCache instance that was built
+         *
+         */
+        public MetadataCache build() {
+            return new MetadataCache(this);
+        }
+    }
+}
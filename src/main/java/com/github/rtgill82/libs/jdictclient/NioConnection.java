@@ -0,0 +1,514 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.github.rtgill82.libs.jdictclient.Command.Type.CLIENT;
+
+/**
+ * A non-blocking connection to a DICT host driven by an
+ * {@link NioTransport}.
+ * <p>
+ * Commands may be sent from any thread. They are written in the order they
+ * are sent, without waiting for earlier responses, and each returned future
+ * is completed on the transport's selector thread once all of the responses
+ * to its command have been received.
+ * <p>
+ * The responses to a command are collected in a single buffer that is
+ * reused for every command, and parsed by a ResponseParser that is also
+ * kept for the life of the connection. A response larger than the maximum
+ * response size closes the connection, so a misbehaving server cannot
+ * exhaust the heap.
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class NioConnection {
+    /** The default maximum size of the responses to a command in bytes. */
+    public static final int DEFAULT_MAX_RESPONSE_SIZE = 16 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /** Response buffers larger than this are released once used. */
+    private static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+    private final NioTransport mTransport;
+    private final String mHost;
+    private final int mPort;
+    private final SocketChannel mChannel;
+    private final Canonicalizer mCanonicalizer = new Canonicalizer();
+
+    /* The following are only accessed from the selector thread. */
+    private final ArrayDeque<Pending> mPending = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> mWriteQueue = new ArrayDeque<>();
+    private final ResponseReader mReader =
+      new ResponseReader(new byte[0]);
+    private final ResponseParser mParser;
+    private byte[] mResponse = new byte[BUFFER_SIZE];
+    private int mResponseLength;
+    private ByteBuffer mReadBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private SelectionKey mKey;
+    private boolean mInData;
+
+    private volatile Banner mBanner;
+    private volatile boolean mClosed;
+    private volatile int mMaxResponseSize = DEFAULT_MAX_RESPONSE_SIZE;
+
+    NioConnection(NioTransport transport, String host, int port,
+                  SocketChannel channel,
+                  CompletableFuture<NioConnection> connected) {
+        mTransport = transport;
+        mHost = host;
+        mPort = port;
+        mChannel = channel;
+        mParser = new ResponseParser(host, mReader, 1, mCanonicalizer);
+        mPending.add(new BannerPending(connected));
+    }
+
+    /**
+     * Send a command to the host.
+     * <p>
+     * If the Command has a deadline and its responses have not all arrived
+     * when it expires, the future fails with a DictTimeoutException and the
+     * connection is closed. The deadline starts once the command has been
+     * queued on the selector thread.
+     *
+     * @param command the Command to be sent
+     * @return future completed with the List of Responses for Command
+     *
+     */
+    public CompletableFuture<List<Response>> send(final Command command) {
+        final CompletableFuture<List<Response>> future =
+          new CompletableFuture<>();
+        if (mClosed || !mTransport.isRunning()) {
+            future.completeExceptionally(new DictConnectionException());
+            return future;
+        }
+
+        CommandEncoder encoder = new CommandEncoder();
+        command.encode(encoder, getId());
+        final ByteBuffer bytes = ByteBuffer.wrap(encoder.toByteArray());
+        mTransport.execute(() -> {
+            Pending pending = new CommandPending(command, future);
+            enqueue(pending, bytes);
+            mTransport.schedule(command.getDeadline(),
+                                () -> expire(pending));
+        });
+        return future;
+    }
+
+    /**
+     * Close the connection to the DICT host.
+     * <p>
+     * Commands still waiting for a response fail with a
+     * DictConnectionException.
+     *
+     */
+    public void close() {
+        mTransport.execute(() -> fail(new DictConnectionException(
+            "The connection has been closed.")));
+    }
+
+    /**
+     * Get the initial connection banner for the host.
+     *
+     * @return Banner containing banner message, connection ID, etc.
+     *
+     */
+    public Banner getBanner() {
+        return mBanner;
+    }
+
+    /**
+     * Get the connection ID.
+     *
+     * @return connection ID string or null if the banner has not been read
+     *
+     */
+    public String getId() {
+        Banner banner = mBanner;
+        if (banner != null)
+          return banner.connectionId;
+        return null;
+    }
+
+    public String getHost() {
+        return mHost;
+    }
+
+    public int getPort() {
+        return mPort;
+    }
+
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    /**
+     * Set the largest total size of the responses to a single command.
+     * <p>
+     * When a command's responses grow past this size the connection is
+     * closed, and every command waiting for a response fails.
+     *
+     * @param size maximum size in bytes
+     *
+     */
+    public void setMaxResponseSize(int size) {
+        if (size < 1)
+          throw new RuntimeException("Maximum response size must be positive.");
+        mMaxResponseSize = size;
+    }
+
+    public int getMaxResponseSize() {
+        return mMaxResponseSize;
+    }
+
+    @Override
+    public String toString() {
+        if (mPort != Connection.DEFAULT_PORT)
+          return mHost + ":" + mPort;
+        else
+          return mHost;
+    }
+
+    void register(Selector selector) {
+        try {
+            int ops = mChannel.isConnectionPending()
+                        ? SelectionKey.OP_CONNECT : SelectionKey.OP_READ;
+            mKey = mChannel.register(selector, ops, this);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void onReady(SelectionKey key) {
+        try {
+            if (key.isValid() && key.isConnectable()) {
+                mChannel.finishConnect();
+                updateInterest();
+            }
+            if (key.isValid() && key.isReadable())
+              onReadable();
+            if (key.isValid() && key.isWritable())
+              onWritable();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Close the channel and fail every command waiting for a response.
+     *
+     * @param cause the reason the connection failed
+     *
+     */
+    void fail(Throwable cause) {
+        mClosed = true;
+        try {
+            mChannel.close();
+        } catch (IOException e) {
+            /* The channel is unusable either way. */
+        }
+
+        Pending pending = mPending.poll();
+        while (pending != null) {
+            pending.fail(cause);
+            pending = mPending.poll();
+        }
+        mWriteQueue.clear();
+    }
+
+    /**
+     * Fail a command whose deadline has expired, closing the connection
+     * since its responses may still arrive.
+     *
+     */
+    private void expire(Pending pending) {
+        if (!mPending.remove(pending))
+          return;
+
+        fail(new DictConnectionException(
+            "The connection was closed after a deadline expired."));
+        pending.fail(new DictTimeoutException(mHost));
+    }
+
+    /**
+     * Fail the connection if it is not ready by the time the connection
+     * timeout expires.
+     *
+     */
+    void expireConnect(CompletableFuture<NioConnection> connected) {
+        if (!connected.isDone())
+          fail(new DictTimeoutException(mHost, "Timed out connecting."));
+    }
+
+    private void enqueue(Pending pending, ByteBuffer bytes) {
+        if (mClosed) {
+            pending.fail(new DictConnectionException());
+            return;
+        }
+        mPending.add(pending);
+        mWriteQueue.add(bytes);
+        updateInterest();
+    }
+
+    private void updateInterest() {
+        if (mKey == null || !mKey.isValid() || mChannel.isConnectionPending())
+          return;
+
+        int ops = SelectionKey.OP_READ;
+        if (!mWriteQueue.isEmpty())
+          ops |= SelectionKey.OP_WRITE;
+        mKey.interestOps(ops);
+    }
+
+    private void onWritable() throws IOException {
+        ByteBuffer bytes = mWriteQueue.peek();
+        while (bytes != null) {
+            mChannel.write(bytes);
+            if (bytes.hasRemaining())
+              return;
+            mWriteQueue.poll();
+            bytes = mWriteQueue.peek();
+        }
+        updateInterest();
+    }
+
+    private void onReadable() throws IOException {
+        if (mChannel.read(mReadBuffer) < 0)
+          throw new DictConnectionException();
+
+        mReadBuffer.flip();
+        byte[] buf = mReadBuffer.array();
+        int start = mReadBuffer.position();
+        int limit = mReadBuffer.limit();
+        for (int i = start; i < limit && !mClosed; i++) {
+            if (buf[i] == '\n') {
+                onLine(buf, start, i + 1);
+                start = i + 1;
+            }
+        }
+        if (mClosed)
+          return;
+
+        mReadBuffer.position(start);
+        mReadBuffer.compact();
+        if (!mReadBuffer.hasRemaining()) {
+            /* A single line has filled the buffer. */
+            if (mReadBuffer.capacity() >= mMaxResponseSize) {
+                fail(new DictException(mHost, null,
+                    "Response exceeds the maximum response size."));
+                return;
+            }
+            resizeReadBuffer(mReadBuffer.capacity() * 2);
+        } else if (mReadBuffer.capacity() > BUFFER_SIZE
+                   && mReadBuffer.position() < BUFFER_SIZE / 2) {
+            resizeReadBuffer(BUFFER_SIZE);
+        }
+    }
+
+    private void resizeReadBuffer(int capacity) {
+        ByteBuffer resized = ByteBuffer.allocate(capacity);
+        mReadBuffer.flip();
+        resized.put(mReadBuffer);
+        mReadBuffer = resized;
+    }
+
+    /**
+     * Handle a single line received from the host.
+     * <p>
+     * Lines are collected until every response to the oldest outstanding
+     * command has been received, then handed to a ResponseParser.
+     *
+     */
+    private void onLine(byte[] buf, int from, int to) {
+        Pending pending = mPending.peek();
+        if (pending == null) {
+            fail(new DictException(mHost, null,
+                "Unexpected data received from server."));
+            return;
+        }
+        if (!append(buf, from, to - from)) {
+            fail(new DictException(mHost, null,
+                "Response exceeds the maximum response size."));
+            return;
+        }
+
+        int length = to - from - 1;
+        if (length > 0 && buf[from + length - 1] == '\r')
+          length -= 1;
+
+        if (mInData) {
+            if (length == 1 && buf[from] == '.')
+              mInData = false;
+            return;
+        }
+
+        int code = statusCode(buf, from, length);
+        if (code < 0) {
+            complete();
+            fail(new DictException(mHost, null, "Invalid status line."));
+        } else if (ResponseParser.isDataResponse(code)) {
+            mInData = true;
+        } else if (code >= 200 && --pending.mRemaining == 0) {
+            complete();
+        }
+    }
+
+    private boolean append(byte[] buf, int from, int length) {
+        int needed = mResponseLength + length;
+        if (needed > mMaxResponseSize)
+          return false;
+
+        if (needed > mResponse.length) {
+            int capacity = Math.max(mResponse.length * 2, needed);
+            mResponse = Arrays.copyOf(mResponse,
+                                      Math.min(capacity, mMaxResponseSize));
+        }
+        System.arraycopy(buf, from, mResponse, mResponseLength, length);
+        mResponseLength = needed;
+        return true;
+    }
+
+    private void complete() {
+        Pending pending = mPending.poll();
+        mReader.reset(mResponse, mResponseLength);
+        mParser.reset(pending.mNumCommands);
+        try {
+            pending.complete(mParser);
+        } finally {
+            /* Let one large response go rather than holding its buffer
+             * for the life of the connection. */
+            mResponseLength = 0;
+            if (mResponse.length > MAX_RETAINED_SIZE)
+              mResponse = new byte[BUFFER_SIZE];
+        }
+    }
+
+    private static int statusCode(byte[] buf, int from, int length) {
+        if (length < 3)
+          return -1;
+
+        int code = 0;
+        for (int i = from; i < from + 3; i++) {
+            if (buf[i] < '0' || buf[i] > '9')
+              return -1;
+            code = code * 10 + (buf[i] - '0');
+        }
+        return code;
+    }
+
+    private abstract static class Pending {
+        private final int mNumCommands;
+        private int mRemaining;
+
+        Pending(int numCommands) {
+            mNumCommands = numCommands;
+            mRemaining = numCommands;
+        }
+
+        abstract void complete(ResponseParser parser);
+
+        abstract void fail(Throwable cause);
+    }
+
+    private static class CommandPending extends Pending {
+        private final Command mCommand;
+        private final CompletableFuture<List<Response>> mFuture;
+
+        CommandPending(Command command,
+                       CompletableFuture<List<Response>> future) {
+            super(command.getNumCommands());
+            mCommand = command;
+            mFuture = future;
+        }
+
+        @Override
+        void complete(ResponseParser parser) {
+            try {
+                mFuture.complete(mCommand.readResponses(parser));
+            } catch (IOException | RuntimeException e) {
+                mFuture.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        void fail(Throwable cause) {
+            mFuture.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Reads the connection banner, then announces the client.
+     *
+     */
+    private class BannerPending extends Pending {
+        private final CompletableFuture<NioConnection> mConnected;
+
+        BannerPending(CompletableFuture<NioConnection> connected) {
+            super(1);
+            mConnected = connected;
+        }
+
+        @Override
+        void complete(ResponseParser parser) {
+            try {
+                mBanner = Connection.checkBanner(mHost, parser.parse());
+            } catch (IOException e) {
+                fail(e);
+                NioConnection.this.fail(e);
+                return;
+            }
+
+            Command command = new Command.Builder(CLIENT)
+                .setParamString(JDictClient.getClientString())
+                .build();
+            send(command).whenComplete((responses, error) -> {
+                if (error == null && responses.get(0).getStatus() != 250) {
+                    Response resp = responses.get(0);
+                    error = new DictException(mHost, resp.getStatus(),
+                                              resp.getMessage());
+                }
+
+                if (error == null) {
+                    mConnected.complete(NioConnection.this);
+                } else {
+                    mConnected.completeExceptionally(error);
+                    NioConnection.this.fail(error);
+                }
+            });
+        }
+
+        @Override
+        void fail(Throwable cause) {
+            mConnected.completeExceptionally(cause);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A non-blocking transport that drives many DICT connections from a single
+ * selector thread.
+ * <p>
+ * Commands sent through an {@link NioConnection} are written and their
+ * responses are read as the socket becomes ready, so no thread is blocked
+ * while waiting for the server. All reading, writing and response parsing
+ * happens on the selector thread, including calls to a Command's
+ * ResponseHandler.
+ * <p>
+ * Connecting is bounded by a timeout, and a Command's deadline is enforced
+ * by a timer on the selector thread. When either expires the connection is
+ * closed and its futures fail, the expired one with a DictTimeoutException.
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class NioTransport implements Runnable {
+    private final Selector mSelector;
+    private final Thread mThread;
+    private final ConcurrentLinkedQueue<Runnable> mTasks =
+      new ConcurrentLinkedQueue<>();
+
+    /* Only accessed from the selector thread. */
+    private final PriorityQueue<Timer> mTimers = new PriorityQueue<>();
+    private volatile boolean mRunning = true;
+
+    /**
+     * Construct a new NioTransport and start its selector thread.
+     *
+     * @throws IOException when the selector cannot be opened
+     *
+     */
+    public NioTransport() throws IOException {
+        mSelector = Selector.open();
+        mThread = new Thread(this, "jdict-client-nio");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Open a connection to the specified host.
+     *
+     * @param host DICT host
+     * @return future completed once the banner has been read
+     *
+     */
+    public CompletableFuture<NioConnection> connect(String host) {
+        return connect(host, Connection.DEFAULT_PORT);
+    }
+
+    /**
+     * Open a connection to the specified host and port.
+     *
+     * @param host DICT host
+     * @param port port number
+     * @return future completed once the connection is ready for use
+     *
+     */
+    public CompletableFuture<NioConnection> connect(String host, int port) {
+        return connect(host, port, Connection.DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Open a connection to the specified host and port.
+     * <p>
+     * The returned future is completed once the connection banner has been
+     * read and the CLIENT command has been acknowledged. If that takes
+     * longer than the timeout, the future fails with a
+     * DictTimeoutException.
+     *
+     * @param host DICT host
+     * @param port port number
+     * @param timeout connection timeout in milliseconds, or 0 for no limit
+     * @return future completed once the connection is ready for use
+     *
+     */
+    public CompletableFuture<NioConnection> connect(String host, int port,
+                                                    int timeout) {
+        CompletableFuture<NioConnection> future = new CompletableFuture<>();
+        try {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.connect(new InetSocketAddress(host, port));
+            final NioConnection connection =
+              new NioConnection(this, host, port, channel, future);
+            execute(() -> {
+                connection.register(mSelector);
+                schedule(timeout, () -> connection.expireConnect(future));
+            });
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Stop the selector thread and close every open connection.
+     *
+     */
+    public void close() {
+        mRunning = false;
+        mSelector.wakeup();
+    }
+
+    /**
+     * Run a task on the selector thread.
+     *
+     * @param task the task to run
+     *
+     */
+    void execute(Runnable task) {
+        mTasks.add(task);
+        mSelector.wakeup();
+    }
+
+    boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * Run a task on the selector thread once a delay has passed. Must be
+     * called from the selector thread.
+     *
+     * @param delay delay in milliseconds, or 0 to never run the task
+     * @param task the task to run
+     *
+     */
+    void schedule(long delay, Runnable task) {
+        if (delay > 0) {
+            mTimers.add(new Timer(System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(delay), task));
+        }
+    }
+
+    @Override
+    public void run() {
+        while (mRunning) {
+            try {
+                mSelector.select(nextTimeout());
+            } catch (IOException e) {
+                break;
+            }
+
+            runTasks();
+            runTimers();
+            Iterator<SelectionKey> itr = mSelector.selectedKeys().iterator();
+            while (itr.hasNext()) {
+                SelectionKey key = itr.next();
+                itr.remove();
+                NioConnection connection = (NioConnection) key.attachment();
+                connection.onReady(key);
+            }
+        }
+
+        runTasks();
+        for (SelectionKey key : new ArrayList<>(mSelector.keys())) {
+            NioConnection connection = (NioConnection) key.attachment();
+            connection.fail(new DictConnectionException(
+                "The transport has been closed."));
+        }
+        try {
+            mSelector.close();
+        } catch (IOException e) {
+            /* Nothing more can be done while shutting down. */
+        }
+    }
+
+    private void runTasks() {
+        Runnable task = mTasks.poll();
+        while (task != null) {
+            task.run();
+            task = mTasks.poll();
+        }
+    }
+
+    private void runTimers() {
+        long now = System.nanoTime();
+        Timer timer = mTimers.peek();
+        while (timer != null && now - timer.mTime >= 0) {
+            mTimers.poll();
+            timer.mTask.run();
+            timer = mTimers.peek();
+        }
+    }
+
+    /**
+     * Time to wait in select() before the next timer is due.
+     *
+     * @return milliseconds to wait, or 0 to wait until woken
+     *
+     */
+    private long nextTimeout() {
+        Timer timer = mTimers.peek();
+        if (timer == null)
+          return 0;
+
+        long remaining = timer.mTime - System.nanoTime();
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+    }
+
+    private static class Timer implements Comparable<Timer> {
+        /** System.nanoTime() at which the task runs. */
+        private final long mTime;
+        private final Runnable mTask;
+
+        Timer(long time, Runnable task) {
+            mTime = time;
+            mTask = task;
+        }
+
+        @Override
+        public int compareTo(Timer other) {
+            return Long.compare(mTime - other.mTime, 0);
+        }
+    }
+}
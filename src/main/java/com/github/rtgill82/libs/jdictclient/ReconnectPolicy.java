@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Controls how a JDictClient reconnects after losing its connection.
+ * <p>
+ * Delays grow exponentially from the initial delay up to the maximum delay,
+ * and each delay is chosen at random between zero and that bound so that
+ * many clients disconnected at the same moment do not all reconnect at the
+ * same moment.
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class ReconnectPolicy {
+    /** The default maximum number of reconnection attempts. */
+    public static final int DEFAULT_MAX_RETRIES = 5;
+
+    /** The default initial delay in milliseconds. */
+    public static final long DEFAULT_INITIAL_DELAY = 100;
+
+    /** The default maximum delay in milliseconds. */
+    public static final long DEFAULT_MAX_DELAY = 10000;
+
+    private final int mMaxRetries;
+    private final long mInitialDelay;
+    private final long mMaxDelay;
+
+    /**
+     * Construct a new ReconnectPolicy using the default settings.
+     *
+     */
+    public ReconnectPolicy() {
+        this(DEFAULT_MAX_RETRIES, DEFAULT_INITIAL_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * Construct a new ReconnectPolicy.
+     *
+     * @param maxRetries maximum number of reconnection attempts per command
+     * @param initialDelay upper bound of the first delay in milliseconds
+     * @param maxDelay upper bound of any delay in milliseconds
+     *
+     */
+    public ReconnectPolicy(int maxRetries, long initialDelay, long maxDelay) {
+        mMaxRetries = maxRetries;
+        mInitialDelay = initialDelay;
+        mMaxDelay = maxDelay;
+    }
+
+    /**
+     * Get the maximum number of reconnection attempts per command.
+     *
+     * @return maximum number of reconnection attempts
+     *
+     */
+    public int getMaxRetries() {
+        return mMaxRetries;
+    }
+
+    /**
+     * Get the delay before a reconnection attempt.
+     *
+     * @param attempt the number of attempts already made, starting at 0
+     * @return delay in milliseconds
+     *
+     */
+    public long getDelay(int attempt) {
+        long bound = mMaxDelay;
+        if (attempt < 62 && mInitialDelay <= (mMaxDelay >> attempt))
+          bound = mInitialDelay << attempt;
+        if (bound <= 0)
+          return 0;
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Shares one in-flight command between concurrent identical requests.
+ * <p>
+ * While a DEFINE, MATCH or SHOW request is waiting for the server, the
+ * same request made by another thread does not send a command of its
+ * own; it waits for the first request and receives a copy of its result.
+ * Nothing is kept once the command completes, so a coalescer never
+ * returns stale results and may be used with or without a DictCache.
+ * <p>
+ * Set on a JDictClientPool, requests are coalesced before a connection
+ * is borrowed, so waiting threads hold no connection. If the shared
+ * request fails, the waiting threads receive the same DictException when
+ * the server rejected the request, and a DictCoalescedException wrapping
+ * the failure otherwise, since their own connections are not affected.
+ * <p>
+ * A coalescer is thread safe and is usually shared by every client of an
+ * application, for example through JDictClientPool.Builder
+ * .setRequestCoalescer().
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class RequestCoalescer {
+    private final ConcurrentHashMap<Object, CompletableFuture<Object>>
+      mInFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Get the number of requests currently waiting for the server.
+     *
+     * @return the number of in-flight requests
+     *
+     */
+    public int getInFlightCount() {
+        return mInFlight.size();
+    }
+
+    /**
+     * Get the key identifying a request to a server.
+     *
+     * @param host the DICT host
+     * @param port the port number
+     * @param request the command type and parameters of the request
+     * @return the key
+     *
+     */
+    static Object key(String host, int port, Object request) {
+        return Arrays.asList(host, port, request);
+    }
+
+    /**
+     * Load a result, or wait for an identical request already loading it.
+     *
+     * @param key identifies the request, including the server it is sent
+     *        to
+     * @param host the host the result is loaded from
+     * @param deadline a System.nanoTime() value by which a result loaded
+     *        by another thread must arrive, or 0 for no deadline
+     * @param loader sends the request to the server
+     * @throws IOException from loader, or from the shared request
+     * @return the result, with lists copied for each caller
+     *
+     */
+    @SuppressWarnings("unchecked")
+    <T> T execute(Object key, String host, long deadline, Loader<T> loader)
+          throws IOException {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> current = mInFlight.putIfAbsent(key, future);
+        if (current != null)
+          return (T) copy(await(current, host, deadline));
+
+        try {
+            T value = loader.load();
+            future.complete(value);
+            return (T) copy(value);
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            mInFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Start an asynchronous request, or share an identical request that
+     * has already been started.
+     * <p>
+     * Threads are not blocked while waiting for the shared request.
+     *
+     * @param key identifies the request, including the server it is sent
+     *        to
+     * @param host the host the result is loaded from
+     * @param start starts the request
+     * @return the future result, with lists copied for each caller
+     *
+     */
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> executeAsync(Object key, String host,
+          Supplier<CompletableFuture<T>> start) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> current = mInFlight.putIfAbsent(key, future);
+        if (current != null) {
+            return current.handle((value, e) -> {
+                if (e != null)
+                  throw new CompletionException(forFollower(host, unwrap(e)));
+                return (T) copy(value);
+            });
+        }
+
+        CompletableFuture<T> result;
+        try {
+            result = start.get();
+        } catch (RuntimeException e) {
+            mInFlight.remove(key, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+        return result.whenComplete((value, e) -> {
+            mInFlight.remove(key, future);
+            if (e != null)
+              future.completeExceptionally(unwrap(e));
+            else
+              future.complete(value);
+        }).thenApply(value -> (T) copy(value));
+    }
+
+    /**
+     * Wait for a result being loaded by another thread.
+     *
+     * @param future the result
+     * @param host the host the result is loaded from
+     * @param deadline a System.nanoTime() value, or 0 for no deadline
+     * @throws DictException when the server rejected the shared request
+     * @throws DictCoalescedException when the shared request failed
+     *         otherwise, or when the deadline expires
+     * @throws IOException when interrupted
+     * @return the result
+     *
+     */
+    static <T> T await(CompletableFuture<T> future, String host,
+                       long deadline) throws IOException {
+        try {
+            if (deadline == 0)
+              return future.get();
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 && !future.isDone())
+              throw new DictCoalescedException(host, null);
+            return future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                "Interrupted while waiting for " + host);
+        } catch (TimeoutException e) {
+            throw new DictCoalescedException(host, null);
+        } catch (ExecutionException e) {
+            Throwable cause = forFollower(host, e.getCause());
+            if (cause instanceof IOException)
+              throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+              throw (RuntimeException) cause;
+            if (cause instanceof Error)
+              throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Get the exception a waiting thread receives for the failure of a
+     * shared request.
+     * <p>
+     * A DictException for a request the server rejected applies equally
+     * to every waiting thread. Any other IOException concerns only the
+     * connection the shared request was sent on, so it is wrapped to keep
+     * pools and reconnection logic from discarding healthy connections.
+     *
+     */
+    private static Throwable forFollower(String host, Throwable cause) {
+        if (cause instanceof DictException) {
+            Integer status = ((DictException) cause).getStatus();
+            if (status != null && status != 420 && status != 421)
+              return cause;
+        }
+        if (cause instanceof IOException)
+          return new DictCoalescedException(host, cause);
+        return cause;
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null)
+          return e.getCause();
+        return e;
+    }
+
+    /** Copy shared lists so that no caller can change another's result. */
+    static Object copy(Object value) {
+        if (value instanceof List)
+          return new ArrayList<>((List<?>) value);
+        return value;
+    }
+
+    /**
+     * Loads a result from a DICT server.
+     *
+     */
+    interface Loader<T> {
+        T load() throws IOException;
+    }
+}
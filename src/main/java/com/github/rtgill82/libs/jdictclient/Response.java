@@ -20,8 +20,14 @@
  */
 package com.github.rtgill82.libs.jdictclient;
 
+import java.util.function.BiFunction;
+
 /**
  * Class containing a response from the server.
+ * <p>
+ * The typed data of a response is decoded from its raw text the first time
+ * getData() is called, so callers that only need the raw text never pay
+ * for parsing it.
  *
  * @author Robert Gill &lt;rtgill82@gmail.com&gt;
  *
@@ -30,17 +36,29 @@ public class Response {
     /** The status code of the response.  */
     private final int mStatus;
 
-    /** The text of the response.  */
-    private final String mText;
+    /**
+     * The text of the response, or null until it is first taken from
+     * mMessage.
+     */
+    private String mText;
 
     /** The full response message (including initial status code).  */
     private final String mMessage;
 
     /** The raw text data following the response message, if applicable.  */
-    private final String mRawData;
+    private String mRawData;
 
     /** Parsed response data.  */
-    private final Object mData;
+    private Object mData;
+
+    /**
+     * Decodes mData from mMessage and mRawData; null once the data is
+     * decoded.
+     */
+    private BiFunction<String, String, ?> mDecoder;
+
+    /** Whether mRawData is kept after mData has been decoded.  */
+    private final boolean mRetainRawData;
 
     /**
      * Construct a new Response.
@@ -59,6 +77,31 @@ public class Response {
         mText = text;
         mRawData = rawData;
         mData = data;
+        mRetainRawData = true;
+    }
+
+    /**
+     * Construct a new Response whose data is decoded on first use.
+     *
+     * @param status response status code
+     * @param message full response status message
+     * @param text response text, or null to take it from message when
+     *        first requested
+     * @param rawData raw text response data
+     * @param decoder decodes the data from the message and raw text
+     * @param retainRawData whether to keep the raw text once the data has
+     *        been decoded
+     *
+     */
+    Response(int status, String message, String text, String rawData,
+             BiFunction<String, String, ?> decoder,
+             boolean retainRawData) {
+        mStatus = status;
+        mMessage = message;
+        mText = text;
+        mRawData = rawData;
+        mDecoder = decoder;
+        mRetainRawData = retainRawData;
     }
 
     /**
@@ -90,7 +133,12 @@ public class Response {
      *
      */
     public String getText() {
-        return mText;
+        String text = mText;
+        if (text == null && mMessage != null) {
+            text = mMessage.length() > 4 ? mMessage.substring(4) : "";
+            mText = text;
+        }
+        return text;
     }
 
     /**
@@ -105,21 +153,33 @@ public class Response {
 
     /**
      * Get the raw text data associated with the response.
+     * <p>
+     * If the response was parsed without retaining raw data, this returns
+     * null once getData() has been called.
      *
      * @return a String containing the response data
      *
      */
-    public String getRawData() {
+    public synchronized String getRawData() {
         return mRawData;
     }
 
     /**
      * Get the data associated with the response.
+     * <p>
+     * The data is decoded from the raw text on the first call and the
+     * same Object is returned by later calls.
      *
      * @return an Object representing the response data
      *
      */
-    public Object getData() {
+    public synchronized Object getData() {
+        if (mDecoder != null) {
+            mData = mDecoder.apply(mMessage, mRawData);
+            mDecoder = null;
+            if (!mRetainRawData)
+              mRawData = null;
+        }
         return mData;
     }
 }
@@ -20,32 +20,33 @@
  */
 package com.github.rtgill82.libs.jdictclient;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.StringReader;
-import java.lang.IllegalAccessException;
-import java.lang.InstantiationException;
-import java.lang.NoSuchMethodException;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
+import java.util.function.BiFunction;
 
+import com.github.rtgill82.libs.jdictclient.HeaderHandler.Body;
 
 /**
  * Parses and returns a DICT protocol response.
+ * <p>
+ * A Connection keeps one parser for its whole life and resets it for each
+ * Command, so the parser, its Status, its decoders and the reader's line
+ * and text buffers are reused. The hot path is not allocation free: each
+ * response still allocates its status line String and a Response, and
+ * each Command collects its responses in a new list. The response text is
+ * only cut from the status line when Response.getText() is called.
  *
  * @author Robert Gill &lt;rtgill82@gmail.com&gt;
  *
  */
 public class ResponseParser implements Iterator<Response> {
     /** An array of response codes that return data.  */
-    private final int[] DATA_RESPONSES = {
+    private static final int[] DATA_RESPONSES = {
         110, // SHOW DATABASES response
         111, // SHOW STRATEGIES response
         112, // SHOW INFO response
@@ -55,10 +56,36 @@ public class ResponseParser implements Iterator<Response> {
         152  // MATCH response; list of matches follows
     };
 
-    private final Connection mConnection;
-    private final BufferedReader mResponseBuffer;
+    private final String mHost;
+    private final ResponseReader mResponseBuffer;
+    private final Canonicalizer mCanonicalizer;
     private int mNumCommands;
-    private Status mStatus;
+
+    /** The status of the last response read, reused for every response. */
+    private final Status mStatus = new Status();
+    private boolean mStarted;
+
+    private ElementFactory<?> mDatabaseFactory = ElementFactory.DATABASE;
+    private ElementFactory<?> mStrategyFactory = ElementFactory.STRATEGY;
+    private ElementFactory<?> mMatchFactory = ElementFactory.MATCH;
+
+    /**
+     * Decoders shared by every Response of a type, so parsing a response
+     * does not allocate one. Element decoders are replaced along with
+     * their factory.
+     */
+    private final BiFunction<String, String, ?> mDefinitionDecoder;
+    private final BiFunction<String, String, ?> mMatchListDecoder;
+    private BiFunction<String, String, ?> mDatabaseDecoder;
+    private BiFunction<String, String, ?> mStrategyDecoder;
+    private BiFunction<String, String, ?> mMatchDecoder;
+    private Consumer<? super Element> mElementConsumer;
+    private HeaderHandler mHeaderHandler;
+    private boolean mDiscarded;
+    private boolean mCallbackFailed;
+    private boolean mOutputFailed;
+    private boolean mRetainRawData = true;
+    private boolean mCompactMatches;
 
     /**
      * Construct a new ResponseParser.
@@ -71,9 +98,193 @@ public class ResponseParser implements Iterator<Response> {
     }
 
     public ResponseParser(Connection connection, int numCommands) {
-        mConnection = connection;
+        this(connection.getHost(), connection.getInputReader(), numCommands);
+    }
+
+    /**
+     * Construct a new ResponseParser reading from an arbitrary reader.
+     *
+     * @param host the host the responses were received from
+     * @param buffer the reader to read responses from
+     * @param numCommands the number of commands the responses answer
+     *
+     */
+    ResponseParser(String host, ResponseReader buffer, int numCommands) {
+        this(host, buffer, numCommands, new Canonicalizer());
+    }
+
+    /**
+     * Construct a new ResponseParser sharing database and strategy names
+     * through an existing table.
+     *
+     * @param host the host the responses were received from
+     * @param buffer the reader to read responses from
+     * @param numCommands the number of commands the responses answer
+     * @param canonicalizer the table of names seen on the connection
+     *
+     */
+    ResponseParser(String host, ResponseReader buffer, int numCommands,
+                   Canonicalizer canonicalizer) {
+        mHost = host;
+        mNumCommands = numCommands - 1;
+        mResponseBuffer = buffer;
+        mCanonicalizer = canonicalizer;
+        mDefinitionDecoder = (message, rawData) ->
+          readDefinition(message, rawData, canonicalizer);
+        mMatchListDecoder = (message, rawData) ->
+          readMatchList(rawData, canonicalizer);
+        mDatabaseDecoder = elementDecoder(mDatabaseFactory);
+        mStrategyDecoder = elementDecoder(mStrategyFactory);
+        mMatchDecoder = elementDecoder(mMatchFactory);
+    }
+
+    /**
+     * Prepare the parser to read the responses to further commands.
+     * <p>
+     * A Connection keeps a single parser and resets it for each Command
+     * rather than allocating a new one. The element consumer, header
+     * handler and raw data setting are cleared.
+     *
+     * @param numCommands the number of commands the responses answer
+     *
+     */
+    void reset(int numCommands) {
         mNumCommands = numCommands - 1;
-        mResponseBuffer = connection.getInputReader();
+        mStarted = false;
+        mDiscarded = false;
+        mElementConsumer = null;
+        mHeaderHandler = null;
+        mRetainRawData = true;
+        mCompactMatches = false;
+    }
+
+    /**
+     * Set the factory used to create the Elements listed in a response.
+     *
+     * @param code the response status code; 110 (SHOW DATABASES), 111
+     *        (SHOW STRATEGIES) or 152 (MATCH)
+     * @param factory the factory used to create the listed Elements
+     *
+     */
+    public void setElementFactory(int code, ElementFactory<?> factory) {
+        switch (code) {
+          case 110:
+            mDatabaseFactory = factory;
+            mDatabaseDecoder = elementDecoder(factory);
+            break;
+
+          case 111:
+            mStrategyFactory = factory;
+            mStrategyDecoder = elementDecoder(factory);
+            break;
+
+          case 152:
+            mMatchFactory = factory;
+            mMatchDecoder = elementDecoder(factory);
+            break;
+
+          default:
+            throw new RuntimeException(
+                "Response " + code + " does not list elements."
+              );
+        }
+    }
+
+    /**
+     * Deliver the Elements listed in SHOW DATABASES, SHOW STRATEGIES and
+     * MATCH responses to a consumer as each line is read.
+     * <p>
+     * Elements are not collected, so memory use does not grow with the
+     * length of the list, and the Responses for these lists carry no raw
+     * or parsed data. If the consumer throws an exception, the rest of
+     * the list is read and discarded before the exception is rethrown.
+     *
+     * @param consumer the consumer of each Element, or null to collect
+     *        Elements into the Response
+     *
+     */
+    public void setElementConsumer(Consumer<? super Element> consumer) {
+        mElementConsumer = consumer;
+    }
+
+    /**
+     * Set the handler that decides whether each response body is kept,
+     * discarded or copied to a stream before the body is read.
+     * <p>
+     * Discarded bodies are skipped in the read buffer without being
+     * decoded. If the handler throws an exception, the body is skipped
+     * before the exception is rethrown.
+     *
+     * @param handler the handler for response headers, or null to keep
+     *        every body
+     *
+     */
+    public void setHeaderHandler(HeaderHandler handler) {
+        mHeaderHandler = handler;
+    }
+
+    /**
+     * Check whether the body of the most recently parsed response was
+     * discarded by the HeaderHandler.
+     *
+     * @return true if the last response was discarded
+     *
+     */
+    boolean isDiscarded() {
+        return mDiscarded;
+    }
+
+    /**
+     * Check whether the last call to parse() failed in an element consumer
+     * or header handler. The body of that response has been read, so the
+     * remaining responses can still be read.
+     *
+     * @return true if a consumer or handler threw the last exception
+     *
+     */
+    boolean isCallbackFailed() {
+        return mCallbackFailed;
+    }
+
+    /**
+     * Check whether the last call to parse() failed writing a body to the
+     * stream chosen by the header handler. The rest of the body is left
+     * unread, so the connection cannot be used again.
+     *
+     * @return true if the body's output stream threw the last exception
+     *
+     */
+    boolean isOutputFailed() {
+        return mOutputFailed;
+    }
+
+    /**
+     * Set whether Responses keep their raw text once their typed data has
+     * been decoded.
+     * <p>
+     * Lists of databases, strategies and matches are otherwise held twice,
+     * as raw text and as Elements. The default is to keep the raw text.
+     *
+     * @param retainRawData false to release the raw text when getData()
+     *        is first called
+     *
+     */
+    public void setRetainRawData(boolean retainRawData) {
+        mRetainRawData = retainRawData;
+    }
+
+    /**
+     * Set whether MATCH results are decoded into a MatchList.
+     * <p>
+     * A MatchList is read-only and stores its entries far more compactly
+     * than a list of Match objects. The MATCH element factory is not used
+     * for compact results.
+     *
+     * @param compactMatches true to decode MATCH results into a MatchList
+     *
+     */
+    public void setCompactMatches(boolean compactMatches) {
+        mCompactMatches = compactMatches;
     }
 
     /**
@@ -104,14 +315,30 @@ public class ResponseParser implements Iterator<Response> {
      *
      */
     public Response parse() throws IOException {
-        mStatus = readStatusLine();
+        readStatusLine();
+        mStarted = true;
+        mDiscarded = false;
+        mCallbackFailed = false;
+        mOutputFailed = false;
+        if (mHeaderHandler != null && isDataResponse(mStatus.code)) {
+            Response header = readHeader(mStatus);
+            if (header != null)
+              return header;
+        }
+
+        ElementFactory<?> factory = elementFactory(mStatus.code);
+        if (factory != null && mElementConsumer != null) {
+            streamElements(factory);
+            return new Response(mStatus.code, mStatus.message, null);
+        }
+
         String rawData = readData(mStatus);
-        Object data = parseData(mStatus, rawData);
         return new Response(
             mStatus.code,
             mStatus.message,
-            mStatus.text,
-            rawData, data
+            null,
+            rawData, decoder(mStatus.code),
+            mRetainRawData
           );
     }
 
@@ -128,91 +355,146 @@ public class ResponseParser implements Iterator<Response> {
 
     @Override
     public boolean hasNext() {
-        return mStatus == null || mStatus.hasNext();
+        return !mStarted || mStatus.hasNext();
     }
 
     /**
-     * Read status code and message from a line in the buffer.
-     *
-     * If the line is a status line, a Status object is created and returned.
-     * If the line is not a status line, the buffer is reset and the method
-     * returns null.
+     * Read status code and message from a line in the buffer into mStatus.
      *
      * @throws DictConnectionException when the connection is unexpectedly
      *         closed by the server
+     * @throws DictException when the line is not a status line
      * @throws IOException from associated Connection Socket
-     * @return a Status object if status was successfully read
      *
      */
-    private Status readStatusLine()
+    private void readStatusLine()
           throws IOException {
         String line = mResponseBuffer.readLine();
         if (line == null)
           throw new DictConnectionException();
 
-        try {
-            int code = Integer.parseInt(line.substring(0, 3));
-            String text = line.substring(4);
-            return new Status(code, text, line);
-        } catch (NumberFormatException e) {
-            throw new DictException(mConnection.getHost(), null,
-                                    "Invalid status line: " + line);
+        int code = 0;
+        for (int i = 0; i < 3; i++) {
+            char c = i < line.length() ? line.charAt(i) : 0;
+            if (c < '0' || c > '9')
+              throw new DictException(mHost, null,
+                                      "Invalid status line: " + line);
+            code = code * 10 + (c - '0');
         }
+
+        mStatus.set(code, line);
     }
 
-    private String readData(Status status)
-          throws IOException {
+    /**
+     * Check whether a response status code is followed by text data.
+     *
+     * @param code the response status code
+     * @return true if a text block terminated by a single '.' follows
+     *
+     */
+    static boolean isDataResponse(int code) {
         for (int i : DATA_RESPONSES) {
-            if (status.code == i) {
-                StringBuilder stringBuilder = new StringBuilder();
-                String line = mResponseBuffer.readLine();
-                while (!line.equals(".")) {
-                    if (line.equals(".."))
-                      line = ".";
-                    stringBuilder.append(line).append("\n");
-                    line = mResponseBuffer.readLine();
-                }
-                return stringBuilder.toString();
+            if (code == i)
+              return true;
+        }
+        return false;
+    }
+
+    /**
+     * Pass the header of a data response to the HeaderHandler and discard
+     * or stream its body as requested.
+     *
+     * @return the header Response, or null if the body is to be kept
+     *
+     */
+    private Response readHeader(Status status) throws IOException {
+        Object data = null;
+        if (status.code == 151)
+          data = readDefinition(status.message, null, mCanonicalizer);
+        Response header = new Response(status.code, status.message,
+                                       null, null, data);
+
+        Body body;
+        try {
+            body = mHeaderHandler.handleHeader(header);
+        } catch (DictException | RuntimeException e) {
+            mResponseBuffer.skipTextBlock();
+            mCallbackFailed = true;
+            throw e;
+        }
+
+        if (body == Body.DISCARD) {
+            mResponseBuffer.skipTextBlock();
+            mDiscarded = true;
+            return header;
+        }
+        if (body != null && body.getOutput() != null) {
+            try {
+                mResponseBuffer.transferTextBlock(body.getOutput());
+            } catch (IOException | RuntimeException e) {
+                mOutputFailed = mResponseBuffer.isOutputFailed();
+                throw e;
             }
+            return header;
         }
         return null;
     }
 
-    private Object parseData(Status status, String rawData)
+    private String readData(Status status)
           throws IOException {
-        Object data = null;
-        Class clazz = status.getResponseDataClass();
-        if (clazz != null && Element.class.isAssignableFrom(clazz)) {
-            data = readElements(status, stringBuffer(rawData));
-        } else if (clazz == Banner.class) {
-            data = readBanner(status);
-        } else if (clazz == Definition.class) {
-            data = readDefinition(status, rawData);
-        } else if (clazz == String.class) {
-            data = rawData;
-        }
-        return data;
+        if (isDataResponse(status.code))
+          return mResponseBuffer.readTextBlock();
+        return null;
     }
 
-    private Banner readBanner(Status status) {
-        /* Regex used to match DICT protocol banner */
-        String BANNER_REGEX = "^220 (.*) <((\\w+\\.?)+)> (<.*>)$";
-
-        Banner banner = null;
-        String message = status.message;
-        Pattern pattern = Pattern.compile(BANNER_REGEX);
-        Matcher matcher = pattern.matcher(message);
-        if (matcher.find()) {
-            String text = message.substring(matcher.start(1), matcher.end(1));
-            String id = message.substring(matcher.start(4), matcher.end(4));
-            String capString =
-              message.substring(matcher.start(2), matcher.end(2));
-            String[] capArray = capString.split("\\.");
-            ArrayList<String> capabilities =
-              new ArrayList<>(Arrays.asList(capArray));
-            banner = new Banner(message, text, id, capabilities);
+    /**
+     * Get the function that decodes the typed data of a response from its
+     * status message and raw text when Response.getData() is first called.
+     *
+     * @return the decoder, or null if the response has no typed data
+     *
+     */
+    private BiFunction<String, String, ?> decoder(int code) {
+        switch (code) {
+          case 110: // SHOW DATABASES response
+            return mDatabaseDecoder;
+
+          case 111: // SHOW STRATEGIES response
+            return mStrategyDecoder;
+
+          case 152: // MATCH response
+            return mCompactMatches ? mMatchListDecoder : mMatchDecoder;
+
+          case 112: // SHOW INFO response
+          case 113: // HELP response
+          case 114: // SHOW SERVER response
+            return (message, rawData) -> rawData;
+
+          case 151: // DEFINE definition response
+            return mDefinitionDecoder;
+
+          case 220: // Connection banner
+            return (message, rawData) -> readBanner(message);
+
+          default:
+            return null;
         }
-        return banner;
+    }
+
+    private BiFunction<String, String, ?> elementDecoder(
+          ElementFactory<?> factory) {
+        Canonicalizer table = mCanonicalizer;
+        return (message, rawData) -> readElements(rawData, factory, table);
+    }
+
+    private static Banner readBanner(String message) {
+        String[] parts = ResponseTokenizer.splitBanner(message);
+        if (parts == null)
+          return null;
+
+        ArrayList<String> capabilities =
+          new ArrayList<>(Arrays.asList(parts).subList(2, parts.length));
+        return new Banner(message, parts[0], parts[1], capabilities);
     }
 
     /**
@@ -221,42 +503,106 @@ public class ResponseParser implements Iterator<Response> {
      *
      * This also includes matches returned by the MATCH command.
      *
-     * @param status the response status
-     * @param buffer the buffer from which to read the list of items
+     * @param rawData the text listing one item per line
+     * @param factory the factory used to create each item
+     * @param table the table sharing each item's key
      * @return list of Elements
      *
      */
-    private List<Element> readElements(Status status, BufferedReader buffer)
-          throws IOException {
-        /* REGEX matches a single line matching 'key "value"' */
-        String ELEMENT_REGEX = "^([^\000-\037 '\"\\\\]+) \"(.+)\"$";
+    private static List<Element> readElements(String rawData,
+                                              ElementFactory<?> factory,
+                                              Canonicalizer table) {
+        ArrayList<Element> arrayList = new ArrayList<>();
+        int start = 0;
+        int length = rawData.length();
+        while (start < length) {
+            int end = rawData.indexOf('\n', start);
+            if (end < 0)
+              end = length;
+
+            String[] element =
+              ResponseTokenizer.splitElement(rawData, start, end);
+            if (element != null)
+              arrayList.add(factory.create(table.canonical(element[0]),
+                                           element[1]));
+            start = end + 1;
+        }
+        return arrayList;
+    }
 
-        String key, value;
-        ArrayList<Element> arrayList;
-        try {
-            Constructor<? extends Element> con;
-            Class<? extends Element> clazz = status.getResponseDataClass();
-            con = clazz.getConstructor(String.class, String.class);
-
-            arrayList = new ArrayList<>();
-            Pattern pattern = Pattern.compile(ELEMENT_REGEX);
-            String line = buffer.readLine();
-            while (line != null) {
-                Matcher matcher = pattern.matcher(line);
-                if (matcher.find()) {
-                    key = line.substring(matcher.start(1), matcher.end(1));
-                    value = line.substring(matcher.start(2), matcher.end(2));
-                    arrayList.add(con.newInstance(key, value));
-                }
-                line = buffer.readLine();
+    /**
+     * Read the matches returned by the MATCH command into a MatchList.
+     *
+     * @param rawData the text listing one match per line
+     * @param table the table sharing each database name
+     * @return the compact list of matches
+     *
+     */
+    private static MatchList readMatchList(String rawData,
+                                           Canonicalizer table) {
+        MatchList.Builder builder = new MatchList.Builder();
+        int start = 0;
+        int length = rawData.length();
+        while (start < length) {
+            int end = rawData.indexOf('\n', start);
+            if (end < 0)
+              end = length;
+
+            String[] element =
+              ResponseTokenizer.splitElement(rawData, start, end);
+            if (element != null)
+              builder.add(table.canonical(element[0]), element[1]);
+            start = end + 1;
+        }
+        return builder.build();
+    }
+
+    /**
+     * Read items line by line, passing each to the element consumer.
+     *
+     */
+    private void streamElements(ElementFactory<?> factory)
+          throws IOException {
+        String line;
+        while ((line = mResponseBuffer.readBlockLine()) != null) {
+            String[] element =
+              ResponseTokenizer.splitElement(line, 0, line.length());
+            if (element == null)
+              continue;
+
+            try {
+                String key = mCanonicalizer.canonical(element[0]);
+                mElementConsumer.accept(factory.create(key, element[1]));
+            } catch (RuntimeException e) {
+                while (mResponseBuffer.readBlockLine() != null)
+                  continue;
+                mCallbackFailed = true;
+                throw e;
             }
-        } catch (IllegalAccessException | InstantiationException
-                 | InvocationTargetException | NoSuchMethodException e) {
-            throw new RuntimeException(e);
         }
-        return arrayList;
     }
 
+    /**
+     * Get the factory for the Elements listed in a response.
+     *
+     * @return the factory, or null if the response does not list Elements
+     *
+     */
+    private ElementFactory<?> elementFactory(int code) {
+        switch (code) {
+          case 110: // SHOW DATABASES response
+            return mDatabaseFactory;
+
+          case 111: // SHOW STRATEGIES response
+            return mStrategyFactory;
+
+          case 152: // MATCH response
+            return mMatchFactory;
+
+          default:
+            return null;
+        }
+    }
 
     /**
      * Read a definition returned by the DEFINE command.
@@ -264,49 +610,32 @@ public class ResponseParser implements Iterator<Response> {
      * Reads a single definition returned by the DEFINE command following a 151
      * response.
      *
-     * @param status the response status (151 expected)
+     * @param message the 151 response status message
      * @param rawData the definition string
+     * @param table the table sharing the Database
      * @return database Definition
      *
      */
-    private Definition readDefinition(Status status, String rawData) {
-        /* REGEX matches a 151 status line preceding definition text */
-        String DEFINITION_REGEX =
-          "^151 \"(.+)\" ([^\000-\037 '\"\\\\]+) \"(.+)\"$";
-
-        Pattern pattern = Pattern.compile(DEFINITION_REGEX);
-        String message = status.message;
-        Matcher matcher = pattern.matcher(message);
-        if (!matcher.find()) {
+    private static Definition readDefinition(String message,
+                                             String rawData,
+                                             Canonicalizer table) {
+        String[] parts = ResponseTokenizer.splitDefinition(message);
+        if (parts == null) {
             throw new RuntimeException(
                 "DEFINE response message does not match expected format: " +
                 message);
         }
 
-        String word = message.substring(matcher.start(1), matcher.end(1));
-        String db = message.substring(matcher.start(2), matcher.end(2));
-        String desc = message.substring(matcher.start(3), matcher.end(3));
-        Database database = new Database(db, desc);
-        return new Definition(word, database, rawData);
-    }
-
-    /**
-     * Create buffered reader for String.
-     *
-     */
-    private BufferedReader stringBuffer(String str) {
-        StringReader stringReader = new StringReader(str);
-        return new BufferedReader(stringReader);
+        Database database = table.database(parts[1], parts[2]);
+        return new Definition(parts[0], database, rawData);
     }
 
     private class Status {
-        private final int code;
-        private final String text;
-        private final String message;
+        private int code;
+        private String message;
 
-        Status(int code, String text, String message) {
+        void set(int code, String message) {
             this.code = code;
-            this.text = text;
             this.message = message;
         }
 
@@ -320,37 +649,5 @@ public class ResponseParser implements Iterator<Response> {
             }
             return true;
         }
-
-        Class getResponseDataClass() {
-            Class clazz = null;
-            switch (code) {
-              case 112: // SHOW INFO response
-              case 113: // HELP response
-              case 114: // SHOW SERVER response
-                clazz = String.class;
-                break;
-
-              case 110: // SHOW DATABASES response
-                clazz = Database.class;
-                break;
-
-              case 111: // SHOW STRATEGIES response
-                clazz = Strategy.class;
-                break;
-
-              case 151: // DEFINE definition response
-                clazz = Definition.class;
-                break;
-
-              case 152: // MATCH response
-                clazz = Match.class;
-                break;
-
-              case 220: // Connection banner
-                clazz = Banner.class;
-                break;
-            }
-            return clazz;
-        }
     }
 }
@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads DICT protocol lines and text blocks directly from bytes.
+ * <p>
+ * Bytes are read into a reusable ByteBuffer and scanned for line
+ * terminators without first being decoded. Text blocks are collected into
+ * a single reusable byte array, with the terminating "." line removed and
+ * leading dots unstuffed in place, and decoded to a String only once. The
+ * array is released if a large block grows it past 64K, so pooled
+ * connections do not keep the largest response they have ever read.
+ * Text that is entirely ASCII, which is most DICT output, skips the UTF-8
+ * decoder.
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+class ResponseReader {
+    /** The default size of the read buffer in bytes. */
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /** The initial size of the line and text buffer in bytes. */
+    private static final int TEXT_SIZE = 256;
+
+    /**
+     * Text buffers grown past this size by a large response are released
+     * once the response has been read.
+     */
+    static final int MAX_RETAINED_TEXT_SIZE = 64 * 1024;
+
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final byte DOT = '.';
+
+    private final InputStream mIn;
+    private ByteBuffer mBuffer;
+
+    /** Bytes of the line or text block being read. */
+    private byte[] mText = new byte[TEXT_SIZE];
+    private int mLength;
+    private boolean mOutputFailed;
+
+    /**
+     * Construct a new ResponseReader.
+     *
+     * @param in the stream to read from
+     * @param bufferSize size of the read buffer in bytes
+     *
+     */
+    ResponseReader(InputStream in, int bufferSize) {
+        mIn = in;
+        mBuffer = ByteBuffer.allocate(bufferSize);
+        mBuffer.flip();
+    }
+
+    /**
+     * Construct a new ResponseReader using the default buffer size.
+     *
+     * @param in the stream to read from
+     *
+     */
+    ResponseReader(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Construct a new ResponseReader over bytes that have already been
+     * received. The bytes are read in place without being copied.
+     *
+     * @param data the received bytes
+     *
+     */
+    ResponseReader(byte[] data) {
+        this(data, data.length);
+    }
+
+    /**
+     * Construct a new ResponseReader over the first bytes of an array.
+     *
+     * @param data the received bytes
+     * @param length the number of bytes received
+     *
+     */
+    ResponseReader(byte[] data, int length) {
+        mIn = null;
+        mBuffer = ByteBuffer.wrap(data, 0, length);
+    }
+
+    /**
+     * Read further bytes that have already been received, in place of
+     * whatever was left unread.
+     * <p>
+     * Used by an NioConnection to reuse one reader for every response.
+     *
+     * @param data the received bytes
+     * @param length the number of bytes received
+     *
+     */
+    void reset(byte[] data, int length) {
+        if (mIn != null)
+          throw new RuntimeException("Reader is reading a stream.");
+        mBuffer = ByteBuffer.wrap(data, 0, length);
+    }
+
+    /**
+     * Read a line without its terminator.
+     *
+     * @throws IOException from the underlying stream
+     * @return the line, or null if the stream ended before any bytes were
+     *         read
+     *
+     */
+    String readLine() throws IOException {
+        mLength = 0;
+        if (!appendLine() && mLength == 0)
+          return null;
+        String line = decode(mText, 0, mLength);
+        shrink();
+        return line;
+    }
+
+    /**
+     * Read a text block terminated by a line containing a single ".".
+     * <p>
+     * Lines are returned terminated by "\n", and a ".." at the start of a
+     * line is returned as ".".
+     *
+     * @throws DictConnectionException when the stream ends inside the block
+     * @throws IOException from the underlying stream
+     * @return the text of the block
+     *
+     */
+    String readTextBlock() throws IOException {
+        mLength = 0;
+        while (true) {
+            int start = mLength;
+            if (!appendLine())
+              throw new DictConnectionException();
+
+            int length = mLength - start;
+            if (length > 0 && mText[start] == DOT) {
+                if (length == 1) {
+                    mLength = start;
+                    break;
+                }
+                if (mText[start + 1] == DOT) {
+                    System.arraycopy(mText, start + 1, mText, start,
+                                     length - 1);
+                    mLength -= 1;
+                }
+            }
+            ensureCapacity(1);
+            mText[mLength++] = LF;
+        }
+        String text = decode(mText, 0, mLength);
+        shrink();
+        return text;
+    }
+
+    /**
+     * Copy a text block to a stream as it is read, without decoding it.
+     * <p>
+     * The copied text is identical to the bytes of readTextBlock(), and
+     * only one line is held in memory at a time.
+     *
+     * @param out the stream to copy the text block to
+     * @throws DictConnectionException when the stream ends inside the block
+     * @throws IOException from the underlying stream or out
+     * @return the number of bytes copied
+     *
+     */
+    long transferTextBlock(OutputStream out) throws IOException {
+        mOutputFailed = false;
+        long total = 0;
+        while (true) {
+            mLength = 0;
+            if (!appendLine())
+              throw new DictConnectionException();
+
+            int start = 0;
+            if (mLength > 0 && mText[0] == DOT) {
+                if (mLength == 1)
+                  break;
+                if (mText[1] == DOT)
+                  start = 1;
+            }
+            ensureCapacity(1);
+            mText[mLength++] = LF;
+            try {
+                out.write(mText, start, mLength - start);
+            } catch (IOException | RuntimeException e) {
+                mOutputFailed = true;
+                throw e;
+            }
+            total += mLength - start;
+        }
+        shrink();
+        return total;
+    }
+
+    /**
+     * Check whether the last call to transferTextBlock() failed writing to
+     * its output rather than reading, leaving the rest of the block unread.
+     *
+     * @return true if the output stream failed
+     *
+     */
+    boolean isOutputFailed() {
+        return mOutputFailed;
+    }
+
+    /**
+     * Skip a text block without copying or decoding it.
+     * <p>
+     * The bytes are scanned in the read buffer for the terminating "."
+     * line, so skipping allocates nothing however long the block is.
+     *
+     * @throws DictConnectionException when the stream ends inside the block
+     * @throws IOException from the underlying stream
+     *
+     */
+    void skipTextBlock() throws IOException {
+        int column = 0;
+        boolean terminator = false;
+        while (true) {
+            if (!mBuffer.hasRemaining() && !fill())
+              throw new DictConnectionException();
+
+            byte[] array = mBuffer.array();
+            int offset = mBuffer.arrayOffset();
+            int to = offset + mBuffer.limit();
+            for (int i = offset + mBuffer.position(); i < to; i++) {
+                byte b = array[i];
+                if (b == LF) {
+                    if (terminator) {
+                        mBuffer.position(i + 1 - offset);
+                        return;
+                    }
+                    column = 0;
+                    continue;
+                }
+
+                /* The line so far is "." or ".\r". */
+                terminator = column == 0 ? b == DOT
+                  : terminator && column == 1 && b == CR;
+                if (column < 2)
+                  column += 1;
+            }
+            mBuffer.position(to - offset);
+        }
+    }
+
+    /**
+     * Read the next line of a text block.
+     * <p>
+     * A ".." at the start of the line is returned as ".".
+     *
+     * @throws DictConnectionException when the stream ends inside the block
+     * @throws IOException from the underlying stream
+     * @return the line without its terminator, or null once the line
+     *         containing a single "." has been read
+     *
+     */
+    String readBlockLine() throws IOException {
+        mLength = 0;
+        if (!appendLine())
+          throw new DictConnectionException();
+
+        int start = 0;
+        if (mLength > 0 && mText[0] == DOT) {
+            if (mLength == 1)
+              return null;
+            if (mText[1] == DOT)
+              start = 1;
+        }
+        String line = decode(mText, start, mLength - start);
+        shrink();
+        return line;
+    }
+
+    /**
+     * Append the next line to the text array, without its CRLF or LF.
+     *
+     * @return true if a line terminator was found, false at end of stream
+     *
+     */
+    private boolean appendLine() throws IOException {
+        while (true) {
+            if (!mBuffer.hasRemaining() && !fill())
+              return false;
+
+            byte[] array = mBuffer.array();
+            int offset = mBuffer.arrayOffset();
+            int from = offset + mBuffer.position();
+            int to = offset + mBuffer.limit();
+            int end = from;
+            while (end < to && array[end] != LF)
+              end += 1;
+
+            int count = end - from;
+            ensureCapacity(count);
+            System.arraycopy(array, from, mText, mLength, count);
+            mLength += count;
+
+            if (end < to) {
+                mBuffer.position(end + 1 - offset);
+                if (mLength > 0 && mText[mLength - 1] == CR)
+                  mLength -= 1;
+                return true;
+            }
+            mBuffer.position(to - offset);
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (mIn == null)
+          return false;
+
+        mBuffer.clear();
+        int count;
+        do {
+            count = mIn.read(mBuffer.array(), mBuffer.arrayOffset(),
+                             mBuffer.capacity());
+        } while (count == 0);
+
+        if (count < 0) {
+            mBuffer.limit(0);
+            return false;
+        }
+        mBuffer.limit(count);
+        return true;
+    }
+
+    /**
+     * Release a text buffer grown by a large response, so a long-lived
+     * connection does not keep it for the rest of its life.
+     *
+     */
+    private void shrink() {
+        if (mText.length > MAX_RETAINED_TEXT_SIZE)
+          mText = new byte[TEXT_SIZE];
+    }
+
+    /**
+     * Get the current capacity of the line and text buffer.
+     *
+     * @return capacity in bytes
+     *
+     */
+    int getTextCapacity() {
+        return mText.length;
+    }
+
+    private void ensureCapacity(int count) {
+        if (mLength + count > mText.length) {
+            byte[] text = new byte[Math.max(mText.length * 2, mLength + count)];
+            System.arraycopy(mText, 0, text, 0, mLength);
+            mText = text;
+        }
+    }
+
+    /**
+     * Decode UTF-8 text, copying ASCII text directly.
+     *
+     */
+    static String decode(byte[] bytes, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (bytes[i] < 0)
+              return new String(bytes, offset, length, StandardCharsets.UTF_8);
+        }
+        return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.util.ArrayList;
+
+/**
+ * Splits DICT protocol lines into their quoted and unquoted parts.
+ * <p>
+ * These hand written scanners accept exactly the lines accepted by the
+ * regular expressions they replace, returning null for anything else, but
+ * avoid compiling a pattern and running a matcher for every line of a long
+ * MATCH or SHOW response.
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+final class ResponseTokenizer {
+    private static final String DEFINITION_PREFIX = "151 \"";
+    private static final String BANNER_PREFIX = "220 ";
+
+    private ResponseTokenizer() { }
+
+    /**
+     * Split a line of the form {@code key "value"}.
+     * <p>
+     * The key may not contain spaces, quotes, backslashes or control
+     * characters, and the value runs to the final quote on the line.
+     *
+     * @param text the text containing the line
+     * @param start index of the first character of the line
+     * @param end index following the last character of the line
+     * @return the key and value, or null if the line does not match
+     *
+     */
+    static String[] splitElement(String text, int start, int end) {
+        int space = scanAtom(text, start, end);
+        if (space == start || space + 2 >= end - 1
+            || text.charAt(space) != ' ' || text.charAt(space + 1) != '"'
+            || text.charAt(end - 1) != '"')
+          return null;
+
+        return new String[] {
+            text.substring(start, space),
+            text.substring(space + 2, end - 1)
+        };
+    }
+
+    /**
+     * Split the status line preceding a definition, of the form
+     * {@code 151 "word" database "description"}.
+     * <p>
+     * The word may itself contain quotes, so the database is taken to be
+     * the last unquoted atom that is followed by a quoted description.
+     *
+     * @param message the full status line
+     * @return the word, database name and database description, or null
+     *         if the line does not match
+     *
+     */
+    static String[] splitDefinition(String message) {
+        int end = message.length();
+        if (!message.startsWith(DEFINITION_PREFIX)
+            || message.charAt(end - 1) != '"')
+          return null;
+
+        int wordStart = DEFINITION_PREFIX.length();
+        for (int quote = message.lastIndexOf('"', end - 2);
+             quote > wordStart;
+             quote = message.lastIndexOf('"', quote - 1)) {
+            if (message.charAt(quote + 1) != ' ')
+              continue;
+
+            int dbStart = quote + 2;
+            int space = scanAtom(message, dbStart, end);
+            if (space > dbStart && space + 2 < end - 1
+                && message.charAt(space) == ' '
+                && message.charAt(space + 1) == '"') {
+                return new String[] {
+                    message.substring(wordStart, quote),
+                    message.substring(dbStart, space),
+                    message.substring(space + 2, end - 1)
+                };
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Split a connection banner of the form
+     * {@code 220 text <capabilities> <connection-id>}.
+     *
+     * @param message the full banner line
+     * @return the banner text and connection ID, followed by each
+     *         capability, or null if the line does not match
+     *
+     */
+    static String[] splitBanner(String message) {
+        int end = message.length();
+        if (!message.startsWith(BANNER_PREFIX)
+            || message.charAt(end - 1) != '>')
+          return null;
+
+        for (int id = message.lastIndexOf('<', end - 1);
+             id >= 0;
+             id = message.lastIndexOf('<', id - 1)) {
+            if (id < 2 || message.charAt(id - 1) != ' '
+                || message.charAt(id - 2) != '>')
+              continue;
+
+            int capEnd = id - 2;
+            int capStart = message.lastIndexOf('<', capEnd - 1);
+            if (capStart < BANNER_PREFIX.length() + 1
+                || message.charAt(capStart - 1) != ' '
+                || !isCapabilities(message, capStart + 1, capEnd))
+              continue;
+
+            ArrayList<String> parts = new ArrayList<>();
+            parts.add(message.substring(BANNER_PREFIX.length(), capStart - 1));
+            parts.add(message.substring(id, end));
+            int from = capStart + 1;
+            for (int i = from; i <= capEnd; i++) {
+                if (i == capEnd || message.charAt(i) == '.') {
+                    if (i > from)
+                      parts.add(message.substring(from, i));
+                    from = i + 1;
+                }
+            }
+            return parts.toArray(new String[parts.size()]);
+        }
+        return null;
+    }
+
+    /**
+     * Find the end of a run of characters allowed in an unquoted atom.
+     *
+     * @return index of the first character that is not allowed
+     *
+     */
+    private static int scanAtom(String text, int start, int end) {
+        int i = start;
+        while (i < end) {
+            char c = text.charAt(i);
+            if (c <= 037 || c == ' ' || c == '\'' || c == '"' || c == '\\')
+              break;
+            i += 1;
+        }
+        return i;
+    }
+
+    /**
+     * Check for dot separated words, each word followed by at most one
+     * dot.
+     *
+     */
+    private static boolean isCapabilities(String text, int start, int end) {
+        if (start >= end || !isWordChar(text.charAt(start)))
+          return false;
+
+        for (int i = start + 1; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '.') {
+                if (text.charAt(i - 1) == '.')
+                  return false;
+            } else if (!isWordChar(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+               || (c >= '0' && c <= '9') || c == '_';
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.github.rtgill82.libs.jdictclient.Command.Type.*;
+
+/**
+ * A group of mirrored DICT servers sharing the load of lookups.
+ * <p>
+ * Each operation is sent to one server chosen by comparing two servers
+ * picked at random and taking the one with the lower expected cost, the
+ * moving average of its response time multiplied by the number of
+ * operations already in flight on it. Slow servers therefore receive
+ * fewer requests without the group having to rank every server.
+ * <p>
+ * A server that cannot be reached, drops its connection, or answers with
+ * status 420, 421 or 530 is ejected from the group and the operation is
+ * retried on another server. Ejected servers are probed with a STATUS
+ * command in the background and re-admitted once they answer. A server
+ * whose pooled connections are all busy is not ejected; the operation
+ * is simply tried on another server.
+ * <p>
+ * Since an operation may be run on more than one server, operations
+ * should only perform lookups that are safe to repeat.
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class ServerGroup {
+    /** The default interval between probes of an ejected server. */
+    public static final long DEFAULT_PROBE_INTERVAL = 5000;
+
+    /** Weight given to the newest sample in the response time average. */
+    private static final double DECAY = 0.3;
+
+    private final List<Server> mServers;
+    private final JDictClientPool mPool;
+    private final boolean mOwnsPool;
+    private final long mProbeInterval;
+    private final ScheduledExecutorService mProber;
+
+    private ServerGroup(Builder builder) {
+        if (builder.mServers.isEmpty())
+          throw new RuntimeException("ServerGroup requires a server.");
+
+        mServers = new ArrayList<>(builder.mServers);
+        mOwnsPool = builder.mPool == null;
+        mPool = mOwnsPool ? new JDictClientPool() : builder.mPool;
+        mProbeInterval = builder.mProbeInterval;
+        mProber = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jdict-client-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Stop probing ejected servers and release resources held by the group.
+     * <p>
+     * A pool created by the group is closed. A pool provided to the Builder
+     * is left for the caller to close.
+     *
+     */
+    public void close() {
+        mProber.shutdownNow();
+        if (mOwnsPool)
+          mPool.close();
+    }
+
+    /**
+     * Get the pool that connections to the group's servers are borrowed
+     * from.
+     *
+     * @return the connection pool
+     *
+     */
+    public JDictClientPool getPool() {
+        return mPool;
+    }
+
+    /**
+     * Get the servers currently accepting requests.
+     *
+     * @return list of available servers as host:port strings
+     *
+     */
+    public List<String> getAvailableServers() {
+        List<String> available = new ArrayList<>();
+        for (Server server : mServers) {
+            if (!server.mEjected)
+              available.add(server.toString());
+        }
+        return available;
+    }
+
+    /**
+     * Get definition for word from the group.
+     *
+     * @param word the word to define
+     * @throws IOException from associated Connection Socket
+     * @return a list of definitions for word or null if no word found
+     *
+     */
+    public List<Definition> define(String word) throws IOException {
+        return define(word, null);
+    }
+
+    /**
+     * Get definition for word from the group.
+     *
+     * @param word the word to define
+     * @param database the database in which to find the definition
+     * @throws IOException from associated Connection Socket
+     * @return a list of definitions for word or null if no word found
+     *
+     */
+    public List<Definition> define(String word, String database)
+          throws IOException {
+        return execute(Arrays.asList(DEFINE, word, database),
+                       client -> client.define(word, database));
+    }
+
+    /**
+     * Match word using requested strategy.
+     *
+     * @param word the word to match
+     * @param strategy the strategy to use for matching
+     * @throws IOException from associated Connection Socket
+     * @return a list of matching words and the dictionaries they are found
+     *         in
+     *
+     */
+    public List<Match> match(String word, String strategy)
+          throws IOException {
+        return match(word, strategy, null);
+    }
+
+    /**
+     * Match word using requested strategy.
+     *
+     * @param word the word to match
+     * @param strategy the strategy to use for matching
+     * @param database the database to search
+     * @throws IOException from associated Connection Socket
+     * @return a list of matching words and the dictionaries they are found
+     *         in or null if no matches found
+     *
+     */
+    public List<Match> match(String word, String strategy, String database)
+          throws IOException {
+        return execute(Arrays.asList(MATCH, word, strategy, database),
+                       client -> client.match(word, strategy, database));
+    }
+
+    /**
+     * Run an operation on one of the group's servers.
+     * <p>
+     * If the chosen server fails, it is ejected and the operation is run
+     * again on another server until every server has been tried.
+     *
+     * @param operation the operation to perform
+     * @throws DictConnectionException when no server is available
+     * @throws IOException from the operation or associated Connection Socket
+     * @return the result of the operation
+     *
+     */
+    public <T> T execute(ClientOperation<T> operation) throws IOException {
+        return execute(null, operation);
+    }
+
+    /**
+     * Run an operation on one of the group's servers, sharing it with an
+     * identical request already running on that server if the pool has a
+     * RequestCoalescer.
+     *
+     */
+    private <T> T execute(Object request, ClientOperation<T> operation)
+          throws IOException {
+        IOException failure = null;
+        List<Server> tried = new ArrayList<>();
+        Server server;
+        while ((server = choose(tried)) != null) {
+            tried.add(server);
+            server.mInFlight.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                T result = mPool.execute(server.mHost, server.mPort,
+                                         request, operation);
+                server.record(System.nanoTime() - start);
+                return result;
+            } catch (DictPoolTimeoutException | DictCoalescedException e) {
+                /* Every connection to the server is busy, or a shared
+                 * request failed on another thread, which ejects the server
+                 * if it was at fault; try another server. */
+                failure = e;
+            } catch (IOException e) {
+                if (!isServerFailure(e)) {
+                    server.record(System.nanoTime() - start);
+                    throw e;
+                }
+                eject(server);
+                failure = e;
+            } finally {
+                server.mInFlight.decrementAndGet();
+            }
+        }
+
+        if (failure != null)
+          throw failure;
+        throw new DictConnectionException("No DICT servers are available.");
+    }
+
+    /**
+     * Choose the cheaper of two available servers picked at random.
+     *
+     */
+    private Server choose(List<Server> tried) {
+        List<Server> candidates = new ArrayList<>(mServers.size());
+        for (Server server : mServers) {
+            if (!server.mEjected && !tried.contains(server))
+              candidates.add(server);
+        }
+
+        int size = candidates.size();
+        if (size == 0)
+          return null;
+        if (size == 1)
+          return candidates.get(0);
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first)
+          second += 1;
+
+        Server a = candidates.get(first);
+        Server b = candidates.get(second);
+        return a.cost() <= b.cost() ? a : b;
+    }
+
+    private void eject(Server server) {
+        synchronized (server) {
+            if (server.mEjected)
+              return;
+            server.mEjected = true;
+        }
+        scheduleProbe(server);
+    }
+
+    private void scheduleProbe(Server server) {
+        try {
+            mProber.schedule(() -> probe(server),
+                             mProbeInterval, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            /* The group has been closed. */
+        }
+    }
+
+    private void probe(Server server) {
+        try {
+            mPool.execute(server.mHost, server.mPort,
+                          client -> client.getStatus());
+        } catch (IOException | RuntimeException e) {
+            scheduleProbe(server);
+            return;
+        }
+
+        /* Forget the latency seen before the server failed. */
+        server.mLatency.set(0);
+        server.mEjected = false;
+    }
+
+    /**
+     * Whether an exception indicates a problem with the server rather than
+     * with the request.
+     *
+     */
+    private static boolean isServerFailure(IOException e) {
+        if (!(e instanceof DictException))
+          return true;
+
+        Integer status = ((DictException) e).getStatus();
+        return status == null || status == 420 || status == 421
+               || status == 530;
+    }
+
+    private static class Server {
+        private final String mHost;
+        private final int mPort;
+        private final AtomicInteger mInFlight = new AtomicInteger();
+
+        /** Moving average of response time in nanoseconds. */
+        private final AtomicLong mLatency = new AtomicLong();
+
+        private volatile boolean mEjected;
+
+        Server(String host, int port) {
+            mHost = host;
+            mPort = port;
+        }
+
+        /**
+         * Expected cost of sending another request. Servers without a
+         * response time yet cost nothing so that each is tried early.
+         *
+         */
+        long cost() {
+            return mLatency.get() * (mInFlight.get() + 1);
+        }
+
+        void record(long elapsed) {
+            long current, updated;
+            do {
+                current = mLatency.get();
+                updated = current == 0 ? elapsed
+                  : (long) (current + DECAY * (elapsed - current));
+            } while (!mLatency.compareAndSet(current, updated));
+        }
+
+        @Override
+        public String toString() {
+            return mHost + ":" + mPort;
+        }
+    }
+
+    /**
+     * Constructs and initializes an instance of ServerGroup.
+     *
+     */
+    public static class Builder {
+        private final List<Server> mServers = new ArrayList<>();
+        private JDictClientPool mPool;
+        private long mProbeInterval = DEFAULT_PROBE_INTERVAL;
+
+        /**
+         * Add a server on the default port to the group.
+         *
+         * @param host DICT host
+         * @return the group builder in progress
+         *
+         */
+        public Builder addServer(String host) {
+            return addServer(host, Connection.DEFAULT_PORT);
+        }
+
+        /**
+         * Add a server to the group.
+         *
+         * @param host DICT host
+         * @param port port number
+         * @return the group builder in progress
+         *
+         */
+        public Builder addServer(String host, int port) {
+            mServers.add(new Server(host, port));
+            return this;
+        }
+
+        /**
+         * Set the pool to borrow clients from.
+         * <p>
+         * If no pool is set, the group creates its own.
+         *
+         * @param pool the pool to borrow clients from
+         * @return the group builder in progress
+         *
+         */
+        public Builder setPool(JDictClientPool pool) {
+            mPool = pool;
+            return this;
+        }
+
+        /**
+         * Set how long to wait between probes of an ejected server.
+         *
+         * @param probeInterval probe interval in milliseconds
+         * @return the group builder in progress
+         *
+         */
+        public Builder setProbeInterval(long probeInterval) {
+            mProbeInterval = probeInterval;
+            return this;
+        }
+
+        /**
+         * Return the built ServerGroup instance.
+         *
+         * @return the ServerGroup instance that was built
+         *
+         */
+        public ServerGroup build() {
+            return new ServerGroup(this);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.lang.management.ManagementFactory;
+
+import static com.github.rtgill82.libs.jdictclient.ResponseStrings.*;
+
+/**
+ * Measures the bytes allocated by the calling thread for each command
+ * sent on a connected client.
+ * <p>
+ * Each operation is warmed up and then run repeatedly on the same client,
+ * and the thread's allocation counter is read before and after. The
+ * figures include the result objects returned to the caller. MockServer
+ * runs on its own threads, so its allocations are not counted. Requires
+ * a JVM providing com.sun.management.ThreadMXBean. Not run as part of
+ * the test suite.
+ * <p>
+ * Usage: AllocationBenchmark [iterations]
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+class AllocationBenchmark {
+    private static final int DEFAULT_ITERATIONS = 20000;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ?
+          Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+
+        MockServer server = new MockServer();
+        server.setResponse("DEFINE", DEFINITION);
+        server.setResponse("MATCH", MATCH);
+        server.setResponse("SHOW", DATABASES);
+        JDictClient client =
+          JDictClient.connect(server.getHost(), server.getPort());
+        System.out.printf("%d iterations per operation%n", iterations);
+        try {
+            run("STATUS", iterations, () -> client.getStatus());
+            run("DEFINE", iterations, () -> client.define("word"));
+            run("MATCH", iterations, () -> client.match("word", "prefix"));
+            run("SHOW DB", iterations, () -> client.getDatabases());
+        } finally {
+            client.close();
+            server.close();
+        }
+    }
+
+    private static void run(String name, int iterations, Operation operation)
+          throws Exception {
+        com.sun.management.ThreadMXBean threads =
+          (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        for (int i = 0; i < iterations; i++)
+          operation.run();
+
+        long start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < iterations; i++)
+          operation.run();
+        long allocated = threads.getThreadAllocatedBytes(thread) - start;
+        System.out.printf("%-8s  %6d bytes/op%n", name,
+                          allocated / iterations);
+    }
+
+    private interface Operation {
+        Object run() throws Exception;
+    }
+}
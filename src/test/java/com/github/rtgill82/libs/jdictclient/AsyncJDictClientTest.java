@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static com.github.rtgill82.libs.jdictclient.ResponseStrings.*;
+
+/**
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class AsyncJDictClientTest {
+    private MockServer mServer;
+    private AsyncJDictClient mClient;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockServer();
+        mServer.setResponse("SHOW DATABASES", DATABASES);
+        mServer.setResponse("DEFINE", DEFINITION);
+        mServer.setResponse("DEFINE * \"nothing\"", "552 no match");
+        mServer.setResponse("MATCH", "550 invalid database");
+        mClient = new AsyncJDictClient.Builder(mServer.getHost())
+                                      .setPort(mServer.getPort())
+                                      .build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mClient.close();
+        mServer.close();
+    }
+
+    @Test
+    public void testDefineAsync() throws Exception {
+        List<Definition> definitions = get(mClient.defineAsync("word"));
+        assertEquals(1, definitions.size());
+        assertEquals("word", definitions.get(0).getWord());
+        assertNull(get(mClient.defineAsync("nothing")));
+    }
+
+    @Test
+    public void testGetDatabasesAsync() throws Exception {
+        List<Database> databases = get(mClient.getDatabasesAsync());
+        assertEquals("foldoc", databases.get(0).getName());
+    }
+
+    @Test
+    public void testCoalescedRequests() throws Exception {
+        mServer.delayNext("DEFINE", 300);
+        JDictClientPool pool = new JDictClientPool.Builder()
+                                   .setRequestCoalescer(new RequestCoalescer())
+                                   .build();
+        AsyncJDictClient client =
+          new AsyncJDictClient.Builder(mServer.getHost())
+                              .setPort(mServer.getPort())
+                              .setPool(pool)
+                              .build();
+
+        List<CompletableFuture<List<Definition>>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+          futures.add(client.defineAsync("word"));
+        for (CompletableFuture<List<Definition>> future : futures)
+          assertEquals(1, get(future).size());
+
+        int defines = 0;
+        for (String command : mServer.getCommands()) {
+            if (command.startsWith("DEFINE"))
+              defines += 1;
+        }
+        assertEquals(1, defines);
+        client.close();
+        pool.close();
+    }
+
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        List<CompletableFuture<List<Definition>>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+          futures.add(mClient.defineAsync("word"));
+        for (CompletableFuture<List<Definition>> future : futures)
+          assertEquals(1, get(future).size());
+        assertTrue(mServer.getConnectionCount()
+                   <= JDictClientPool.DEFAULT_MAX_CONNECTIONS);
+    }
+
+    @Test
+    public void testExceptionalCompletion() throws Exception {
+        try {
+            get(mClient.matchAsync("word", "exact", "none"));
+            fail("DictSyntaxException expected");
+        } catch (ExecutionException e) {
+            assertEquals(DictSyntaxException.class, e.getCause().getClass());
+        }
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        AsyncJDictClient client;
+        try {
+            client = new AsyncJDictClient.Builder(mServer.getHost())
+                                         .setPort(mServer.getPort())
+                                         .useVirtualThreads()
+                                         .build();
+        } catch (UnsupportedOperationException e) {
+            /* Running on a Java version without virtual threads. */
+            return;
+        }
+
+        List<CompletableFuture<List<Definition>>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+          futures.add(client.defineAsync("word"));
+        for (CompletableFuture<List<Definition>> future : futures)
+          assertEquals(1, get(future).size());
+        client.close();
+    }
+
+    @Test
+    public void testHedgedRequest() throws Exception {
+        AsyncJDictClient client =
+          new AsyncJDictClient.Builder(mServer.getHost())
+                              .setPort(mServer.getPort())
+                              .setHedgePolicy(new HedgePolicy(0.9, 20))
+                              .build();
+        for (int i = 0; i < LatencyTracker.MIN_SAMPLES; i++)
+          get(client.defineAsync("word"));
+
+        mServer.delayNext("DEFINE", 3000);
+        long start = System.nanoTime();
+        List<Definition> definitions =
+          client.defineAsync("word").get(2, TimeUnit.SECONDS);
+        assertEquals(1, definitions.size());
+        assertTrue(System.nanoTime() - start
+                   < TimeUnit.MILLISECONDS.toNanos(2000));
+
+        int defines = 0;
+        for (String command : mServer.getCommands()) {
+            if (command.startsWith("DEFINE"))
+              defines += 1;
+        }
+        assertEquals(LatencyTracker.MIN_SAMPLES + 2, defines);
+        client.close();
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        AsyncJDictClient client =
+          new AsyncJDictClient.Builder(mServer.getHost())
+                              .setPort(mServer.getPort())
+                              .setDeadline(100)
+                              .build();
+        mServer.delayNext("DEFINE", 2000);
+        try {
+            get(client.defineAsync("word"));
+            fail("DictTimeoutException expected");
+        } catch (ExecutionException e) {
+            assertEquals(DictTimeoutException.class, e.getCause().getClass());
+        }
+        assertEquals(1, get(client.defineAsync("word")).size());
+        client.close();
+    }
+
+    private static <T> T get(CompletableFuture<T> future) throws Exception {
+        return future.get(5, TimeUnit.SECONDS);
+    }
+}
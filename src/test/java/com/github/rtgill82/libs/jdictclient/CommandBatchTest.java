@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static com.github.rtgill82.libs.jdictclient.Command.Type.*;
+
+/**
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class CommandBatchTest {
+    private MockServer mServer;
+    private JDictClient mClient;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockServer();
+        for (int i = 0; i < 100; i++) {
+            mServer.setResponse("DEFINE * \"w" + i + "\"",
+                "150 1 definitions retrieved\n" +
+                "151 \"w" + i + "\" db \"Database\"\n" +
+                "Definition " + i + "\n.\n250 ok");
+        }
+        mServer.setResponse("DEFINE", "552 no match");
+        mServer.setResponse("MATCH * exact \"bad\"", "551 invalid strategy");
+        mServer.setResponse("MATCH", "152 1 matches found\n" +
+                                     "db \"word\"\n.\n250 ok");
+        mClient = JDictClient.connect(mServer.getHost(), mServer.getPort());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.close();
+    }
+
+    @Test
+    public void testDefineAll() throws IOException {
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            words.add("w" + i);
+            if (i % 10 == 0)
+              words.add("missing");
+        }
+        mClient.setPipelineDepth(8);
+
+        List<List<Definition>> results = mClient.defineAll(words);
+        assertEquals(words.size(), results.size());
+        for (int i = 0; i < words.size(); i++) {
+            List<Definition> definitions = results.get(i);
+            if (words.get(i).equals("missing")) {
+                assertNull(definitions);
+            } else {
+                assertEquals(words.get(i), definitions.get(0).getWord());
+                assertEquals("Definition " + words.get(i).substring(1) + "\n",
+                             definitions.get(0).getDefinition());
+            }
+        }
+    }
+
+    @Test
+    public void testBatchResponsesInOrder() throws IOException {
+        Command.Batch batch = new Command.Batch().setDepth(2);
+        batch.add(new Command.Builder(STATUS).build());
+        batch.add(new Command.Builder(DEFINE).setWord("w1").build());
+        batch.add(new Command.Builder(STATUS).build());
+
+        List<List<Response>> results =
+          batch.execute(mClient.getConnection());
+        assertEquals(3, results.size());
+        assertEquals(210, results.get(0).get(0).getStatus());
+        assertEquals(150, results.get(1).get(0).getStatus());
+        assertEquals(210, results.get(2).get(0).getStatus());
+    }
+
+    @Test
+    public void testBatchDeadline() throws IOException {
+        mServer.delayNext("DEFINE * \"w2\"", 2000);
+        Command.Batch batch = new Command.Batch().setDeadline(100);
+        for (int i = 0; i < 4; i++)
+          batch.add(new Command.Builder(DEFINE).setWord("w" + i).build());
+        try {
+            batch.execute(mClient.getConnection());
+            fail("DictTimeoutException expected");
+        } catch (DictTimeoutException e) {
+            assertTrue(mClient.getConnection().isClosed());
+        }
+    }
+
+    @Test
+    public void testDrainDeadline() throws IOException {
+        mServer.delayNext("DEFINE * \"w1\"", 2000);
+        Command.Batch batch = new Command.Batch().setDeadline(300);
+        Command command = new Command.Builder(DEFINE).setWord("w0").build();
+        command.setResponseHandler(response -> {
+            throw new IllegalStateException("handler failed");
+        });
+        batch.add(command);
+        batch.add(new Command.Builder(DEFINE).setWord("w1").build());
+        try {
+            batch.execute(mClient.getConnection());
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertEquals("handler failed", e.getMessage());
+            assertEquals(1, e.getSuppressed().length);
+            assertTrue(e.getSuppressed()[0] instanceof DictTimeoutException);
+        }
+        assertTrue(mClient.getConnection().isClosed());
+    }
+
+    @Test
+    public void testMalformedResponseNotDrained() throws IOException {
+        mServer.setResponse("DEFINE * \"w0\"", "garbage");
+        Command.Batch batch = new Command.Batch();
+        for (int i = 0; i < 3; i++)
+          batch.add(new Command.Builder(DEFINE).setWord("w" + i).build());
+        try {
+            batch.execute(mClient.getConnection());
+            fail("DictException expected");
+        } catch (DictException e) {
+            assertNull(e.getStatus());
+            assertEquals(0, e.getSuppressed().length);
+        }
+        assertTrue(mClient.getConnection().isClosed());
+    }
+
+    @Test
+    public void testErrorDrainsPipeline() throws IOException {
+        List<String> words = Arrays.asList("a", "bad", "c", "d");
+        try {
+            mClient.matchAll(words, "exact", null);
+            fail("DictSyntaxException expected");
+        } catch (DictSyntaxException e) {
+            assertEquals(new Integer(551), e.getStatus());
+        }
+        assertEquals("up 1", mClient.getStatus());
+    }
+}
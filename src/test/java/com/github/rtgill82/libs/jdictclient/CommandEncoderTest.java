@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+import static com.github.rtgill82.libs.jdictclient.Command.Type.*;
+
+/**
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class CommandEncoderTest {
+    @Test
+    public void testFixedCommand() {
+        assertEquals("SHOW DATABASES\r\n",
+                     encode(new Command.Builder(SHOW_DATABASES).build()));
+        assertEquals("STATUS\r\n",
+                     encode(new Command.Builder(STATUS).build()));
+    }
+
+    @Test
+    public void testQuoting() {
+        Command define = new Command.Builder(DEFINE)
+                                    .setWord("say \"hi\" \\ bye")
+                                    .build();
+        assertEquals("DEFINE * \"say \\\"hi\\\" \\\\ bye\"\r\n",
+                     encode(define));
+
+        Command match = new Command.Builder(MATCH)
+                                   .setDatabase("my db")
+                                   .setStrategy("prefix")
+                                   .setWord("word")
+                                   .build();
+        assertEquals("MATCH \"my db\" prefix \"word\"\r\n", encode(match));
+    }
+
+    @Test
+    public void testUtf8() {
+        Command define = new Command.Builder(DEFINE)
+                                    .setWord("caf\u00e9 \u20ac \ud83d\ude00")
+                                    .build();
+        assertEquals("DEFINE * \"caf\u00e9 \u20ac \ud83d\ude00\"\r\n",
+                     encode(define));
+    }
+
+    @Test
+    public void testOtherLines() {
+        Command other = new Command.Builder(OTHER)
+                                   .setCommandString("STATUS\nHELP\r\nQUIT")
+                                   .build();
+        assertEquals("STATUS\r\nHELP\r\nQUIT\r\n", encode(other));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testLineBreakInWord() {
+        new Command.Builder(DEFINE).setWord("word\r\nQUIT").build();
+    }
+
+    @Test
+    public void testSingleWrite() throws IOException {
+        CountingStream out = new CountingStream();
+        CommandEncoder encoder = new CommandEncoder(out);
+        new Command.Builder(STATUS).build().encode(encoder, null);
+        new Command.Builder(DEFINE).setWord("word").build()
+                                   .encode(encoder, null);
+        encoder.flush();
+        assertEquals(1, out.mWrites);
+        assertEquals("STATUS\r\nDEFINE * \"word\"\r\n",
+                     new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static String encode(Command command) {
+        CommandEncoder encoder = new CommandEncoder();
+        command.encode(encoder, null);
+        return new String(encoder.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static class CountingStream extends ByteArrayOutputStream {
+        private int mWrites;
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            mWrites += 1;
+            super.write(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static com.github.rtgill82.libs.jdictclient.ResponseStrings.*;
+
+/**
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class ConnectionConfigTest {
+    @Test
+    public void testDefaults() {
+        ConnectionConfig config = ConnectionConfig.DEFAULT;
+        assertFalse(config.getTcpNoDelay());
+        assertFalse(config.getKeepAlive());
+        assertEquals(0, config.getSendBufferSize());
+        assertEquals(0, config.getReceiveBufferSize());
+        assertEquals(ConnectionConfig.DEFAULT_READER_BUFFER_SIZE,
+                     config.getReaderBufferSize());
+        assertFalse(config.getAutoFlush());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testInvalidReaderBufferSize() {
+        new ConnectionConfig.Builder().setReaderBufferSize(0);
+    }
+
+    @Test
+    public void testConfiguredConnection() throws IOException {
+        MockServer server = new MockServer();
+        server.setResponse("DEFINE", DEFINITION);
+        ConnectionConfig config = new ConnectionConfig.Builder()
+                                      .setTcpNoDelay(true)
+                                      .setKeepAlive(true)
+                                      .setSendBufferSize(4096)
+                                      .setReceiveBufferSize(4096)
+                                      .setReaderBufferSize(16)
+                                      .setAutoFlush(true)
+                                      .build();
+        Connection connection = new Connection(server.getHost(),
+            server.getPort(), Connection.DEFAULT_TIMEOUT, config);
+        JDictClient client = new JDictClient(connection);
+        client.connect();
+
+        List<Definition> definitions = client.define("word");
+        assertEquals(1, definitions.size());
+        assertSame(config, client.getConnection().getConfig());
+        client.close();
+        server.close();
+    }
+}
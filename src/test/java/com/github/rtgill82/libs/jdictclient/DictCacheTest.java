@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class DictCacheTest {
+    @Test
+    public void testNormalizedKey() {
+        DictCache cache = new DictCache();
+        cache.put(defineKey("  Hello   World ", null),
+                  definitions("wn", "greeting"));
+        assertNotNull(cache.get(defineKey("hello world", "*")));
+        assertNull(cache.get(defineKey("hello world", "wn")));
+        assertNull(cache.get(matchKey("hello world", "exact", null)));
+    }
+
+    @Test
+    public void testMatchKey() {
+        assertEquals(matchKey(" Word ", "prefix", null),
+                     matchKey("word", "prefix", null));
+        assertNotEquals(matchKey("^Wo", "re", null),
+                        matchKey("^wo", "re", null));
+        assertNotEquals(matchKey("a  b", "regexp", null),
+                        matchKey("a b", "regexp", null));
+    }
+
+    @Test
+    public void testServerKey() {
+        DictCache cache = new DictCache();
+        cache.put(DictCache.defineKey("host1", 2628, "word", null),
+                  definitions("wn", "word"));
+        cache.putMiss(DictCache.matchKey("host1", 2628, "wrod", "exact",
+                                         null));
+        assertNull(cache.get(DictCache.defineKey("host2", 2628, "word",
+                                                 null)));
+        assertNull(cache.get(DictCache.defineKey("host1", 2629, "word",
+                                                 null)));
+        assertFalse(cache.isMiss(DictCache.matchKey("host2", 2628, "wrod",
+                                                    "exact", null)));
+    }
+
+    @Test
+    public void testCopy() {
+        DictCache cache = new DictCache();
+        DictCache.Key key = matchKey("word", "exact", null);
+        cache.put(key, new ArrayList<>(Arrays.asList(new Match("wn", "w"))));
+
+        List<Match> matches = cache.get(key);
+        matches.clear();
+        assertEquals(1, cache.<Match>get(key).size());
+    }
+
+    @Test
+    public void testEviction() {
+        DictCache cache = new DictCache.Builder().setMaxWeight(2000).build();
+        for (int i = 0; i < 10; i++) {
+            cache.put(defineKey("word" + i, null),
+                      definitions("wn", text(200)));
+            cache.get(defineKey("word0", null));
+        }
+        assertTrue(cache.getWeight() <= 2000);
+        assertTrue(cache.size() < 10);
+        assertNotNull(cache.get(defineKey("word0", null)));
+        assertNull(cache.get(defineKey("word1", null)));
+        assertNotNull(cache.get(defineKey("word9", null)));
+    }
+
+    @Test
+    public void testMiss() {
+        DictCache cache = new DictCache();
+        DictCache.Key key = defineKey("wrod", null);
+        assertFalse(cache.isMiss(key));
+        cache.putMiss(key);
+        assertTrue(cache.isMiss(defineKey("Wrod", "*")));
+        assertNull(cache.get(key));
+
+        cache.put(key, definitions("wn", "word"));
+        assertFalse(cache.isMiss(key));
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void testMissBudget() {
+        DictCache cache = new DictCache.Builder()
+          .setMaxWeight(1000)
+          .setMaxNegativeWeight(500)
+          .build();
+        cache.put(defineKey("word", null),
+                  definitions("wn", text(200)));
+        for (int i = 0; i < 100; i++)
+          cache.putMiss(defineKey("miss" + i, null));
+
+        assertTrue(cache.getMissCount() < 100);
+        assertTrue(cache.isMiss(defineKey("miss99", null)));
+        assertFalse(cache.isMiss(defineKey("miss0", null)));
+        assertNotNull(cache.get(defineKey("word", null)));
+    }
+
+    @Test
+    public void testMissTtl() {
+        DictCache cache = new DictCache.Builder()
+          .setTtl("wn", 0)
+          .build();
+        cache.putMiss(defineKey("wrod", "wn"));
+        cache.putMiss(defineKey("wrod", null));
+        assertFalse(cache.isMiss(defineKey("wrod", "wn")));
+        assertTrue(cache.isMiss(defineKey("wrod", null)));
+    }
+
+    @Test
+    public void testTooLarge() {
+        DictCache cache = new DictCache.Builder().setMaxWeight(100).build();
+        cache.put(defineKey("word", null),
+                  definitions("wn", text(200)));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testTtl() throws InterruptedException {
+        DictCache cache = new DictCache.Builder().setTtl("short", 50)
+                                                 .setTtl("none", 0)
+                                                 .build();
+        DictCache.Key shortKey = defineKey("word", "short");
+        DictCache.Key mixedKey = defineKey("word", null);
+        DictCache.Key noneKey = defineKey("word", "none");
+        cache.put(shortKey, definitions("short", "text"));
+        cache.put(mixedKey, definitions("short", "text"));
+        cache.put(noneKey, definitions("none", "text"));
+        assertNotNull(cache.get(shortKey));
+        assertNull(cache.get(noneKey));
+
+        Thread.sleep(100);
+        assertNull(cache.get(shortKey));
+        assertNull(cache.get(mixedKey));
+        assertEquals(0, cache.getWeight());
+    }
+
+    private static DictCache.Key defineKey(String word, String database) {
+        return DictCache.defineKey("host", 2628, word, database);
+    }
+
+    private static DictCache.Key matchKey(String word, String strategy,
+                                          String database) {
+        return DictCache.matchKey("host", 2628, word, strategy, database);
+    }
+
+    private static List<Definition> definitions(String database,
+                                                String text) {
+        Database db = new Database(database, "description");
+        return Arrays.asList(new Definition("word", db, text));
+    }
+
+    private static String text(int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++)
+          text.append('x');
+        return text.toString();
+    }
+}
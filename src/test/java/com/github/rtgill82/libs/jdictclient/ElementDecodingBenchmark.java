@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the regex and reflection based decoding that ResponseParser
+ * used to do with the ResponseTokenizer and ElementFactory path.
+ * <p>
+ * The "before" methods are copies of the removed ResponseParser code,
+ * including compiling the pattern on every call. Both sides decode the same
+ * wildcard MATCH listing and the same run of 151 headers, and the best of
+ * several rounds is reported. Not run as part of the test suite.
+ * <p>
+ * Usage: ElementDecodingBenchmark [matches]
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+class ElementDecodingBenchmark {
+    private static final int DEFAULT_MATCHES = 50000;
+    private static final int HEADERS = 1000;
+    private static final int ROUNDS = 20;
+
+    private static final String ELEMENT_REGEX =
+      "^([^\000-\037 '\"\\\\]+) \"(.+)\"$";
+    private static final String DEFINITION_REGEX =
+      "^151 \"(.+)\" ([^\000-\037 '\"\\\\]+) \"(.+)\"$";
+
+    private static int sSink;
+
+    public static void main(String[] args) throws Exception {
+        int matches = args.length > 0 ?
+          Integer.parseInt(args[0]) : DEFAULT_MATCHES;
+
+        StringBuilder listing = new StringBuilder();
+        for (int i = 0; i < matches; i++)
+          listing.append("wn \"word").append(i).append("\"\n");
+        String rawData = listing.toString();
+
+        List<String> headers = new ArrayList<>(HEADERS);
+        for (int i = 0; i < HEADERS; i++)
+          headers.add("151 \"word" + i + "\" wn \"WordNet (r) 3.0 (2006)\"");
+
+        System.out.printf("MATCH listing of %d lines, %d 151 headers%n",
+                          matches, HEADERS);
+        long before = Long.MAX_VALUE;
+        long after = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            sSink += elementsBefore(rawData).size();
+            before = Math.min(before, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            sSink += elementsAfter(rawData).size();
+            after = Math.min(after, System.nanoTime() - start);
+        }
+        report("MATCH listing", before, after, matches);
+
+        before = Long.MAX_VALUE;
+        after = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (String header : headers)
+              sSink += headerBefore(header).length;
+            before = Math.min(before, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (String header : headers)
+              sSink += ResponseTokenizer.splitDefinition(header).length;
+            after = Math.min(after, System.nanoTime() - start);
+        }
+        report("151 headers", before, after, HEADERS);
+
+        if (sSink == 0)
+          System.out.println();
+    }
+
+    private static void report(String name, long before, long after,
+                               int lines) {
+        System.out.printf("%-14s  before %7.1f ns/line  after %7.1f ns/line"
+                          + "  (%.1fx)%n", name,
+                          (double) before / lines, (double) after / lines,
+                          (double) before / after);
+    }
+
+    private static List<Element> elementsBefore(String rawData)
+          throws IOException, ReflectiveOperationException {
+        BufferedReader buffer = new BufferedReader(new StringReader(rawData));
+        Constructor<Match> con =
+          Match.class.getConstructor(String.class, String.class);
+        ArrayList<Element> arrayList = new ArrayList<>();
+        Pattern pattern = Pattern.compile(ELEMENT_REGEX);
+        String line = buffer.readLine();
+        while (line != null) {
+            Matcher matcher = pattern.matcher(line);
+            if (matcher.find()) {
+                String key = line.substring(matcher.start(1), matcher.end(1));
+                String value =
+                  line.substring(matcher.start(2), matcher.end(2));
+                arrayList.add(con.newInstance(key, value));
+            }
+            line = buffer.readLine();
+        }
+        return arrayList;
+    }
+
+    private static List<Element> elementsAfter(String rawData) {
+        ArrayList<Element> arrayList = new ArrayList<>();
+        int start = 0;
+        int length = rawData.length();
+        while (start < length) {
+            int end = rawData.indexOf('\n', start);
+            if (end < 0)
+              end = length;
+
+            String[] element =
+              ResponseTokenizer.splitElement(rawData, start, end);
+            if (element != null)
+              arrayList.add(ElementFactory.MATCH.create(element[0],
+                                                        element[1]));
+            start = end + 1;
+        }
+        return arrayList;
+    }
+
+    private static String[] headerBefore(String message) {
+        Pattern pattern = Pattern.compile(DEFINITION_REGEX);
+        Matcher matcher = pattern.matcher(message);
+        if (!matcher.find())
+          return null;
+
+        return new String[] {
+            message.substring(matcher.start(1), matcher.end(1)),
+            message.substring(matcher.start(2), matcher.end(2)),
+            message.substring(matcher.start(3), matcher.end(3))
+        };
+    }
+}
@@ -23,6 +23,7 @@ package com.github.rtgill82.libs.jdictclient;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 
 /**
  * @author Robert Gill &lt;rtgill82@gmail.com&gt;
@@ -50,4 +51,17 @@ public class ElementTest {
         Element element = new Element(KEY, VALUE);
         assertEquals(ITEMSTRING, element.toString());
     }
+
+    /**
+     * Test method for {@link com.github.rtgill82.libs.jdictclient.Element#equals(java.lang.Object)}.
+     */
+    @Test
+    public void testElementEquals() {
+        Element element = new Element(KEY, VALUE);
+        assertEquals(element, new Element(KEY, VALUE));
+        assertEquals(element.hashCode(), new Element(KEY, VALUE).hashCode());
+        assertNotEquals(element, new Element(KEY, "other"));
+        assertNotEquals(element, new Match(KEY, VALUE));
+        assertEquals(new Match(KEY, VALUE), new Match(KEY, VALUE));
+    }
 }
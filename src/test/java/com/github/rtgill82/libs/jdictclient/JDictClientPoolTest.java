@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static com.github.rtgill82.libs.jdictclient.ResponseStrings.*;
+
+/**
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class JDictClientPoolTest {
+    private MockServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockServer();
+        mServer.setResponse("SHOW", DATABASES);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.close();
+    }
+
+    @Test
+    public void testClientReused() throws IOException {
+        JDictClientPool pool = new JDictClientPool();
+        JDictClient client = pool.acquire(mServer.getHost(), mServer.getPort());
+        client.getDatabases();
+        pool.release(client);
+
+        JDictClient reused = pool.acquire(mServer.getHost(), mServer.getPort());
+        assertSame(client, reused);
+        pool.release(reused);
+
+        assertEquals(1, mServer.getConnectionCount());
+        assertEquals(1, pool.getIdleCount(mServer.getHost(),
+                                          mServer.getPort()));
+        pool.close();
+    }
+
+    @Test
+    public void testSettingsReset() throws IOException {
+        DictCache cache = new DictCache();
+        JDictClientPool pool = new JDictClientPool.Builder()
+                                                  .setCache(cache)
+                                                  .build();
+        JDictClient client = pool.acquire(mServer.getHost(), mServer.getPort());
+        client.setDeadline(5000);
+        client.setPipelineDepth(2);
+        client.setCache(null);
+        client.setRequestCoalescer(new RequestCoalescer());
+        pool.release(client);
+
+        JDictClient reused = pool.acquire(mServer.getHost(), mServer.getPort());
+        assertSame(client, reused);
+        assertEquals(0, reused.getDeadline());
+        assertEquals(Command.Batch.DEFAULT_DEPTH, reused.getPipelineDepth());
+        assertSame(cache, reused.getCache());
+        assertNull(reused.getRequestCoalescer());
+        pool.release(reused);
+        pool.close();
+    }
+
+    @Test
+    public void testAuthenticatedClientClosed() throws IOException {
+        mServer.setResponse("AUTH", AUTH_SUCCESS);
+        JDictClientPool pool = new JDictClientPool();
+        JDictClient client = pool.acquire(mServer.getHost(), mServer.getPort());
+        assertTrue(client.authenticate("user", "secret"));
+        pool.release(client);
+
+        assertTrue(client.getConnection().isClosed());
+        assertEquals(0, pool.getConnectionCount(mServer.getHost(),
+                                                mServer.getPort()));
+        JDictClient other = pool.acquire(mServer.getHost(), mServer.getPort());
+        assertNotSame(client, other);
+        assertFalse(other.isAuthenticated());
+        pool.release(other);
+        pool.close();
+    }
+
+    @Test
+    public void testForeignClientNotConfigured() throws IOException {
+        JDictClientPool pool = new JDictClientPool();
+        JDictClient client =
+          JDictClient.connect(mServer.getHost(), mServer.getPort());
+        client.setDeadline(5000);
+        try {
+            pool.release(client);
+            fail("Expected RuntimeException");
+        } catch (RuntimeException e) {
+            /* Expected */
+        }
+        assertEquals(5000, client.getDeadline());
+        client.close();
+        pool.close();
+    }
+
+    @Test
+    public void testExecute() throws IOException {
+        JDictClientPool pool = new JDictClientPool();
+        List<Database> databases = pool.execute(
+            mServer.getHost(), mServer.getPort(),
+            new ClientOperation<List<Database>>() {
+                @Override
+                public List<Database> execute(JDictClient client)
+                      throws IOException {
+                    return client.getDatabases();
+                }
+            });
+        assertEquals(1, databases.size());
+        assertEquals(1, pool.getIdleCount(mServer.getHost(),
+                                          mServer.getPort()));
+        pool.close();
+    }
+
+    @Test
+    public void testMaxConnections() throws IOException {
+        JDictClientPool pool = new JDictClientPool.Builder()
+                                   .setMaxConnectionsPerHost(1)
+                                   .setMaxWait(50)
+                                   .build();
+        JDictClient client = pool.acquire(mServer.getHost(), mServer.getPort());
+        try {
+            pool.acquire(mServer.getHost(), mServer.getPort());
+            fail("DictConnectionException expected");
+        } catch (DictConnectionException e) {
+            assertEquals(1, pool.getConnectionCount(mServer.getHost(),
+                                                    mServer.getPort()));
+        }
+        pool.release(client);
+        pool.close();
+    }
+
+    @Test
+    public void testStaleConnectionReplaced() throws IOException {
+        JDictClientPool pool = new JDictClientPool.Builder()
+                                   .setValidationInterval(0)
+                                   .build();
+        JDictClient client = pool.acquire(mServer.getHost(), mServer.getPort());
+        pool.release(client);
+        mServer.dropConnections();
+
+        JDictClient fresh = pool.acquire(mServer.getHost(), mServer.getPort());
+        assertNotSame(client, fresh);
+        assertEquals(2, mServer.getConnectionCount());
+        pool.release(fresh);
+        pool.close();
+    }
+
+    @Test
+    public void testIdleEviction() throws IOException {
+        JDictClientPool pool = new JDictClientPool.Builder()
+                                   .setMaxIdleTime(0)
+                                   .build();
+        JDictClient client = pool.acquire(mServer.getHost(), mServer.getPort());
+        pool.release(client);
+        pool.evictIdle();
+
+        assertEquals(0, pool.getConnectionCount(mServer.getHost(),
+                                                mServer.getPort()));
+        assertTrue(client.getConnection().isClosed());
+        pool.close();
+    }
+
+    @Test
+    public void testInvalidate() throws IOException {
+        JDictClientPool pool = new JDictClientPool();
+        JDictClient client = pool.acquire(mServer.getHost(), mServer.getPort());
+        pool.invalidate(client);
+
+        assertTrue(client.getConnection().isClosed());
+        assertEquals(0, pool.getConnectionCount(mServer.getHost(),
+                                                mServer.getPort()));
+        pool.close();
+    }
+
+    @Test
+    public void testSharedCache() throws IOException {
+        MockServer other = new MockServer();
+        mServer.setResponse("DEFINE", DEFINITION);
+        mServer.setResponse("MATCH", "552 no match");
+        other.setResponse("DEFINE", "552 no match");
+        other.setResponse("MATCH", MATCH);
+        JDictClientPool pool = new JDictClientPool.Builder()
+                                   .setCache(new DictCache())
+                                   .build();
+
+        JDictClient client = pool.acquire(mServer.getHost(),
+                                          mServer.getPort());
+        assertEquals(1, client.define("word").size());
+        assertNull(client.match("word", "exact"));
+        pool.release(client);
+
+        client = pool.acquire(other.getHost(), other.getPort());
+        assertNull(client.define("word"));
+        assertNotNull(client.match("word", "exact"));
+        pool.release(client);
+
+        pool.close();
+        other.close();
+    }
+
+    @Test
+    public void testCoalesceBeforeAcquire() throws Exception {
+        mServer.setResponse("DEFINE", DEFINITION);
+        mServer.delayNext("DEFINE", 500);
+        RequestCoalescer coalescer = new RequestCoalescer();
+        JDictClientPool pool = new JDictClientPool.Builder()
+                                   .setMaxConnectionsPerHost(1)
+                                   .setMaxWait(100)
+                                   .setRequestCoalescer(coalescer)
+                                   .build();
+        String host = mServer.getHost();
+        int port = mServer.getPort();
+        List<Object> request = Arrays.asList(Command.Type.DEFINE, "word", null);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<List<Definition>> first = executor.submit(() ->
+            pool.execute(host, port, request, client -> client.define("word")));
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (coalescer.getInFlightCount() == 0
+               && System.nanoTime() - end < 0)
+          Thread.sleep(1);
+
+        /* The only connection is busy, so this would time out if it had
+         * to borrow one. */
+        List<Definition> definitions = pool.execute(host, port, request,
+            client -> client.define("word"));
+        assertEquals(1, definitions.size());
+        assertEquals(definitions, first.get(5, TimeUnit.SECONDS));
+        assertEquals(1, mServer.getConnectionCount());
+
+        executor.shutdown();
+        pool.close();
+    }
+
+    @Test
+    public void testMetadataBeforeAcquire() throws Exception {
+        mServer.delayNext("SHOW", 500);
+        JDictClientPool pool = new JDictClientPool.Builder()
+                                   .setMaxConnectionsPerHost(2)
+                                   .setMaxWait(100)
+                                   .setMetadataCache(new MetadataCache())
+                                   .build();
+        String host = mServer.getHost();
+        int port = mServer.getPort();
+
+        /* A cold cache: every caller asks while the first is loading, and
+         * the connections would run out if each waited holding one. */
+        int callers = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        List<Future<List<Database>>> futures = new ArrayList<>();
+        for (int i = 0; i < callers; i++)
+          futures.add(executor.submit(() -> pool.getDatabases(host, port)));
+        List<Database> databases = futures.get(0).get(5, TimeUnit.SECONDS);
+        assertFalse(databases.isEmpty());
+        for (Future<List<Database>> future : futures)
+          assertEquals(databases, future.get(5, TimeUnit.SECONDS));
+        assertEquals(1, mServer.getConnectionCount());
+
+        /* Cached results are returned without borrowing a client. */
+        JDictClient first = pool.acquire(host, port);
+        JDictClient second = pool.acquire(host, port);
+        assertEquals(databases, pool.getDatabases(host, port));
+        pool.release(first);
+        pool.release(second);
+        int shows = 0;
+        for (String command : mServer.getCommands()) {
+            if (command.startsWith("SHOW"))
+              shows += 1;
+        }
+        assertEquals(1, shows);
+
+        executor.shutdown();
+        pool.close();
+    }
+}
@@ -23,9 +23,22 @@ package com.github.rtgill82.libs.jdictclient;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
+import static com.github.rtgill82.libs.jdictclient.ResponseStrings.*;
 
 /**
  * @author Robert Gill &lt;rtgill82@gmail.com&gt;
@@ -66,4 +79,468 @@ public class JDictClientTest {
     public void testLibraryVendor() {
         assertEquals(LIBRARY_VENDOR, JDictClient.getLibraryVendor());
     }
+
+    @Test
+    public void testReconnect() throws IOException {
+        MockServer server = new MockServer();
+        server.setResponse("DEFINE", DEFINITION);
+        JDictClient client =
+          JDictClient.connect(server.getHost(), server.getPort());
+        client.setReconnectPolicy(new ReconnectPolicy(3, 1, 10));
+        assertEquals(1, client.define("word").size());
+
+        server.dropConnections();
+        List<Definition> definitions = client.define("word");
+        assertEquals(1, definitions.size());
+        assertEquals(2, server.getConnectionCount());
+        server.close();
+    }
+
+    @Test
+    public void testReconnectAfterShutdown() throws IOException {
+        MockServer server = new MockServer();
+        server.setResponse("DEFINE", SHUTDOWN);
+        JDictClient client =
+          JDictClient.connect(server.getHost(), server.getPort());
+        client.setReconnectPolicy(new ReconnectPolicy(2, 1, 10));
+        try {
+            client.define("word");
+            fail("DictServerException expected");
+        } catch (DictServerException e) {
+            assertEquals(new Integer(421), e.getStatus());
+        }
+        assertEquals(3, server.getConnectionCount());
+        server.close();
+    }
+
+    @Test
+    public void testNoReconnectByDefault() throws IOException {
+        MockServer server = new MockServer();
+        JDictClient client =
+          JDictClient.connect(server.getHost(), server.getPort());
+        server.dropConnections();
+        try {
+            client.getStatus();
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertEquals(1, server.getConnectionCount());
+        }
+        server.close();
+    }
+
+    @Test
+    public void testDeadline() throws IOException {
+        MockServer server = new MockServer();
+        server.setResponse("DEFINE", DEFINITION);
+        server.delayNext("DEFINE", 2000);
+        JDictClient client =
+          JDictClient.connect(server.getHost(), server.getPort());
+        client.setDeadline(100);
+        long start = System.nanoTime();
+        try {
+            client.define("word");
+            fail("DictTimeoutException expected");
+        } catch (DictTimeoutException e) {
+            assertTrue(System.nanoTime() - start < 1000000000L);
+            assertTrue(client.getConnection().isClosed());
+        }
+        server.close();
+    }
+
+    @Test
+    public void testStreamingMatch() throws IOException {
+        StringBuilder response = new StringBuilder("152 5000 matches\n");
+        for (int i = 0; i < 5000; i++)
+          response.append("db \"word").append(i).append("\"\n");
+        response.append(".\n250 ok");
+
+        MockServer server = new MockServer();
+        server.setResponse("MATCH", response.toString());
+        JDictClient client =
+          JDictClient.connect(server.getHost(), server.getPort());
+
+        List<Match> matches = new ArrayList<>();
+        assertEquals(5000, client.match("w", "prefix", null, matches::add));
+        assertEquals(5000, matches.size());
+        assertEquals("word4999", matches.get(4999).getWord());
+
+        try {
+            client.match("w", "prefix", null, match -> {
+                throw new IllegalStateException("stop");
+            });
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertEquals("up 1", client.getStatus());
+        }
+        server.close();
+    }
+
+    @Test
+    public void testStreamingMatchBatch() throws IOException {
+        MockServer server = new MockServer();
+        server.setResponse("MATCH",
+            "152 2 matches\ndb \"one\"\ndb \"two\"\n.\n250 ok");
+        JDictClient client =
+          JDictClient.connect(server.getHost(), server.getPort());
+
+        Command.Batch batch = new Command.Batch();
+        for (int i = 0; i < 3; i++) {
+            batch.add(new Command.Builder(Command.Type.MATCH)
+                        .setParamString("w" + i)
+                        .setStrategy("prefix")
+                        .setElementConsumer(element -> {
+                            throw new IllegalStateException("stop");
+                        })
+                        .build());
+        }
+        try {
+            batch.execute(client.getConnection());
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertEquals("up 1", client.getStatus());
+        }
+        server.close();
+    }
+
+    @Test
+    public void testIncrementalDefine() throws IOException {
+        MockServer server = new MockServer();
+        server.setResponse("DEFINE * \"word\"",
+            "150 2 definitions retrieved\n" +
+            "151 \"word\" one \"First\"\nfirst\n.\n" +
+            "151 \"word\" two \"Second\"\nsecond\n.\n250 ok");
+        server.setResponse("DEFINE", "552 no match");
+        JDictClient client =
+          JDictClient.connect(server.getHost(), server.getPort());
+
+        List<Definition> definitions = new ArrayList<>();
+        assertEquals(2, client.define("word", null, definitions::add));
+        assertEquals("one", definitions.get(0).getDatabase().getName());
+        assertEquals("second\n", definitions.get(1).getDefinition());
+        assertEquals(0, client.define("nothing", null, definitions::add));
+        assertEquals(2, definitions.size());
+        server.close();
+    }
+
+    @Test
+    public void testTransferDefinitions() throws IOException {
+        MockServer server = new MockServer();
+        server.setResponse("DEFINE * \"word\"",
+            "150 2 definitions retrieved\n" +
+            "151 \"word\" one \"First\"\nfirst\n..dot\n.\n" +
+            "151 \"word\" two \"Second\"\nsecond\n.\n250 ok");
+        JDictClient client =
+          JDictClient.connect(server.getHost(), server.getPort());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<String> databases = new ArrayList<>();
+        assertEquals(2, client.transferDefinitions("word", null, definition -> {
+            assertNull(definition.getDefinition());
+            databases.add(definition.getDatabase().getName());
+            return out;
+        }));
+        assertEquals("one", databases.get(0));
+        assertEquals("two", databases.get(1));
+        assertEquals("first\n.dot\nsecond\n", out.toString("UTF-8"));
+        assertNotNull(client.getStatus());
+        server.close();
+    }
+
+    @Test
+    public void testTransferDefinitionsOutputFails() throws IOException {
+        MockServer server = new MockServer();
+        server.setResponse("DEFINE * \"word\"",
+            "150 2 definitions retrieved\n" +
+            "151 \"word\" one \"First\"\nfirst\n.\n" +
+            "151 \"word\" two \"Second\"\nsecond\n.\n250 ok");
+        JDictClient client =
+          JDictClient.connect(server.getHost(), server.getPort());
+        client.setReconnectPolicy(new ReconnectPolicy(3, 1, 10));
+
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        try {
+            client.transferDefinitions("word", null, definition -> failing);
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+        assertTrue(client.getConnection().isClosed());
+        assertEquals("up 1", client.getStatus());
+        assertEquals(2, server.getConnectionCount());
+        server.close();
+    }
+
+    @Test
+    public void testTransferDefinitionsHandlerFails() throws IOException {
+        MockServer server = new MockServer();
+        server.setResponse("DEFINE * \"word\"",
+            "150 2 definitions retrieved\n" +
+            "151 \"word\" one \"First\"\nfirst\n.\n" +
+            "151 \"word\" two \"Second\"\nsecond\n.\n250 ok");
+        JDictClient client =
+          JDictClient.connect(server.getHost(), server.getPort());
+
+        try {
+            client.transferDefinitions("word", null, definition -> {
+                throw new IllegalArgumentException("no output");
+            });
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("no output", e.getMessage());
+        }
+        assertFalse(client.getConnection().isClosed());
+        assertEquals("up 1", client.getStatus());
+        assertEquals(1, server.getConnectionCount());
+        server.close();
+    }
+
+    @Test
+    public void testTransferDatabaseInfo() throws IOException {
+        StringBuilder info = new StringBuilder();
+        for (int i = 0; i < 10000; i++)
+          info.append("line ").append(i).append('\n');
+
+        MockServer server = new MockServer();
+        server.setResponse("SHOW INFO db",
+            "112 information follows\n" + info + ".\n250 ok");
+        JDictClient client =
+          JDictClient.connect(server.getHost(), server.getPort());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(info.length(), client.transferDatabaseInfo("db", out));
+        assertEquals(info.toString(), out.toString("UTF-8"));
+        server.close();
+    }
+
+    @Test
+    public void testDefineIn() throws IOException {
+        MockServer server = new MockServer();
+        server.setResponse("DEFINE * \"word\"",
+            "150 3 definitions retrieved\n" +
+            "151 \"word\" one \"First\"\nfirst\n.\n" +
+            "151 \"word\" two \"Second\"\nsecond\n..\n.\n" +
+            "151 \"word\" three \"Third\"\nthird\n.\n250 ok");
+        JDictClient client =
+          JDictClient.connect(server.getHost(), server.getPort());
+
+        List<Definition> definitions =
+          client.defineIn("word", Arrays.asList("one", "three"));
+        assertEquals(2, definitions.size());
+        assertEquals("first\n", definitions.get(0).getDefinition());
+        assertEquals("three", definitions.get(1).getDatabase().getName());
+        assertNotNull(client.getStatus());
+        server.close();
+    }
+
+    @Test
+    public void testQuotedWord() throws IOException {
+        MockServer server = new MockServer();
+        server.setResponse("DEFINE * \"it's \\\"quoted\\\"\"",
+            "150 1 definitions retrieved\n" +
+            "151 \"it's \\\"quoted\\\"\" one \"First\"\nfirst\n.\n250 ok");
+        server.setResponse("DEFINE", "552 no match");
+        JDictClient client =
+          JDictClient.connect(server.getHost(), server.getPort());
+
+        assertEquals(1, client.define("it's \"quoted\"").size());
+        server.close();
+    }
+
+    @Test
+    public void testAuthenticateNonAscii() throws Exception {
+        MockServer server = new MockServer();
+        server.setResponse("AUTH", AUTH_SUCCESS);
+        JDictClient client =
+          JDictClient.connect(server.getHost(), server.getPort());
+        String secret = "p\u00e4ssw\u00f6rd";
+        assertTrue(client.authenticate("user", secret));
+
+        MessageDigest md5 = MessageDigest.getInstance("MD5");
+        byte[] digest = md5.digest((client.getConnection().getId() + secret)
+                                   .getBytes(StandardCharsets.UTF_8));
+        StringBuilder expected = new StringBuilder("AUTH user ");
+        for (byte b : digest)
+          expected.append(String.format("%02X", b));
+        assertTrue(server.getCommands().contains(expected.toString()));
+        server.close();
+    }
+
+    @Test
+    public void testMatchCompact() throws IOException {
+        MockServer server = new MockServer();
+        server.setResponse("MATCH * prefix \"wor\"",
+            "152 3 matches found\nwn \"word\"\nfoldoc \"world\"\n" +
+            "wn \"worm\"\n.\n250 ok");
+        server.setResponse("MATCH", "552 no match");
+        JDictClient client =
+          JDictClient.connect(server.getHost(), server.getPort());
+
+        MatchList matches = client.matchCompact("wor", "prefix", null);
+        assertEquals(3, matches.size());
+        assertEquals("world", matches.getWord(1));
+        assertEquals(new Match("wn", "worm"), matches.get(2));
+        assertNull(client.matchCompact("xyz", "prefix", null));
+        server.close();
+    }
+
+    @Test
+    public void testCache() throws IOException {
+        MockServer server = new MockServer();
+        server.setResponse("DEFINE", DEFINITION);
+        server.setResponse("MATCH", "552 no match");
+        JDictClient client =
+          JDictClient.connect(server.getHost(), server.getPort());
+        client.setCache(new DictCache());
+
+        List<Definition> definitions = client.define("word");
+        definitions.clear();
+        assertEquals(1, client.define("Word").size());
+        assertEquals(1, client.define(" word ", null).size());
+        assertNull(client.match("word", "exact"));
+        assertNull(client.match("word", "exact"));
+
+        int defines = 0, matches = 0;
+        for (String command : server.getCommands()) {
+            if (command.startsWith("DEFINE"))
+              defines += 1;
+            if (command.startsWith("MATCH"))
+              matches += 1;
+        }
+        assertEquals(1, defines);
+        assertEquals(1, matches);
+        server.close();
+    }
+
+    @Test
+    public void testMetadataCache() throws IOException {
+        MockServer server = new MockServer();
+        server.setResponse("SHOW DATABASES", DATABASES);
+        server.setResponse("SHOW STRATEGIES", STRATEGIES);
+        server.setResponse("SHOW INFO wn", DATABASE_INFO);
+        MetadataCache cache = new MetadataCache();
+        JDictClient client1 =
+          JDictClient.connect(server.getHost(), server.getPort());
+        client1.setMetadataCache(cache);
+        JDictClient client2 =
+          JDictClient.connect(server.getHost(), server.getPort());
+        client2.setMetadataCache(cache);
+
+        client1.getDatabases().clear();
+        assertEquals(1, client2.getDatabases().size());
+        assertEquals(client1.getStrategies(), client2.getStrategies());
+        assertEquals(client1.getDatabaseInfo("wn"),
+                     client2.getDatabaseInfo("wn"));
+        int shows = 0;
+        for (String command : server.getCommands()) {
+            if (command.startsWith("SHOW"))
+              shows += 1;
+        }
+        assertEquals(3, shows);
+
+        server.setBanner("220 dictd 1.13 <auth.mime> <101@dictd.org>");
+        JDictClient client3 =
+          JDictClient.connect(server.getHost(), server.getPort());
+        client3.setMetadataCache(cache);
+        client3.getDatabases();
+        client2.getDatabases();
+
+        int databases = 0;
+        for (String command : server.getCommands()) {
+            if (command.equals("SHOW DATABASES"))
+              databases += 1;
+        }
+        assertEquals(2, databases);
+        server.close();
+    }
+
+    @Test
+    public void testMetadataCacheBanners() throws IOException {
+        MockServer server = new MockServer();
+        server.setResponse("SHOW DATABASES", DATABASES);
+        MetadataCache cache = new MetadataCache();
+        JDictClient client1 =
+          JDictClient.connect(server.getHost(), server.getPort());
+        client1.setMetadataCache(cache);
+        server.setBanner("220 dictd 1.13 <auth.mime> <101@dictd.org>");
+        JDictClient client2 =
+          JDictClient.connect(server.getHost(), server.getPort());
+        client2.setMetadataCache(cache);
+
+        for (int i = 0; i < 5; i++) {
+            client1.getDatabases();
+            client2.getDatabases();
+        }
+
+        int databases = 0;
+        for (String command : server.getCommands()) {
+            if (command.equals("SHOW DATABASES"))
+              databases += 1;
+        }
+        assertEquals(2, databases);
+        client1.close();
+        client2.close();
+        server.close();
+    }
+
+    @Test
+    public void testRequestCoalescer() throws Exception {
+        MockServer server = new MockServer();
+        server.setResponse("DEFINE", DEFINITION);
+        server.delayNext("DEFINE", 500);
+        RequestCoalescer coalescer = new RequestCoalescer();
+        JDictClient client1 =
+          JDictClient.connect(server.getHost(), server.getPort());
+        client1.setRequestCoalescer(coalescer);
+        JDictClient client2 =
+          JDictClient.connect(server.getHost(), server.getPort());
+        client2.setRequestCoalescer(coalescer);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<List<Definition>> first =
+          executor.submit(() -> client1.define("word"));
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (coalescer.getInFlightCount() == 0
+               && System.nanoTime() - end < 0)
+          Thread.sleep(1);
+
+        List<Definition> definitions = client2.define("word");
+        assertEquals(1, definitions.size());
+        assertEquals(definitions, first.get(5, TimeUnit.SECONDS));
+        assertNotSame(definitions, first.get());
+
+        int defines = 0;
+        for (String command : server.getCommands()) {
+            if (command.startsWith("DEFINE"))
+              defines += 1;
+        }
+        assertEquals(1, defines);
+        executor.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void testCacheMissDisabled() throws IOException {
+        MockServer server = new MockServer();
+        server.setResponse("MATCH", "552 no match");
+        JDictClient client =
+          JDictClient.connect(server.getHost(), server.getPort());
+        client.setCache(new DictCache.Builder().setNegativeTtl(0).build());
+
+        assertNull(client.match("word", "exact"));
+        assertNull(client.match("word", "exact"));
+        assertEquals(0, client.getCache().getMissCount());
+
+        int matches = 0;
+        for (String command : server.getCommands()) {
+            if (command.startsWith("MATCH"))
+              matches += 1;
+        }
+        assertEquals(2, matches);
+        server.close();
+    }
 }
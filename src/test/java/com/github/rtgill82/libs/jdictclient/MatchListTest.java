@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class MatchListTest {
+    @Test
+    public void testMatchList() {
+        List<Match> matches = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+          matches.add(new Match(i % 3 == 0 ? "wn" : "foldoc", "word" + i));
+
+        MatchList list = new MatchList(matches);
+        assertEquals(1000, list.size());
+        assertEquals(matches, list);
+        assertEquals(matches.hashCode(), list.hashCode());
+        assertEquals("wn", list.getDatabase(999));
+        assertEquals("word500", list.getWord(500));
+        assertEquals(new Match("foldoc", "word1"), list.get(1));
+    }
+
+    @Test
+    public void testEmptyWord() {
+        MatchList list = new MatchList(Arrays.asList(
+            new Match("wn", ""), new Match("wn", "word")));
+        assertEquals("", list.getWord(0));
+        assertEquals("word", list.getWord(1));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadOnly() {
+        new MatchList(new ArrayList<>()).add(new Match("wn", "word"));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOutOfBounds() {
+        new MatchList(Arrays.asList(new Match("wn", "word"))).get(1);
+    }
+}
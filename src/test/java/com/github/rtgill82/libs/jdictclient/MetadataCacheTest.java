@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class MetadataCacheTest {
+    private static final Banner BANNER =
+      banner("dictd 1.12", "auth", "mime");
+
+    @Test
+    public void testConcurrentLoad() throws Exception {
+        MetadataCache cache = new MetadataCache();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        Future<String> first = executor.submit(() ->
+            cache.get("host:2628", BANNER, "databases", 0, () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                return "result";
+            }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        ArrayList<Future<String>> others = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            others.add(executor.submit(() ->
+                cache.get("host:2628", BANNER, "databases", 0, () -> {
+                    loads.incrementAndGet();
+                    return "other";
+                })));
+        }
+        release.countDown();
+
+        assertEquals("result", first.get(5, TimeUnit.SECONDS));
+        for (Future<String> other : others)
+          assertEquals("result", other.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testBannerChange() throws IOException {
+        MetadataCache cache = new MetadataCache();
+        cache.get("host:2628", BANNER, "databases", 0, () -> "old");
+        assertEquals("old", cache.get("host:2628", BANNER, "databases", 0,
+                                      () -> "new"));
+        assertEquals("new", cache.get("host:2628",
+                                      banner("dictd 1.12", "auth"),
+                                      "databases", 0, () -> "new"));
+        assertEquals("other", cache.get("other:2628", BANNER, "databases",
+                                        0, () -> "other"));
+        assertEquals("old", cache.get("host:2628", BANNER, "databases", 0,
+                                      () -> "reloaded"));
+    }
+
+    @Test
+    public void testBannerLimit() throws IOException {
+        MetadataCache cache = new MetadataCache();
+        cache.get("host:2628", BANNER, "databases", 0, () -> "old");
+        for (int i = 0; i < 4; i++) {
+            cache.get("host:2628", banner("dictd 1.1" + i), "databases", 0,
+                      () -> "new");
+        }
+        assertEquals("reloaded", cache.get("host:2628", BANNER, "databases",
+                                           0, () -> "reloaded"));
+    }
+
+    @Test
+    public void testFailureNotCached() throws IOException {
+        MetadataCache cache = new MetadataCache();
+        try {
+            cache.get("host:2628", BANNER, "databases", 0, () -> {
+                throw new DictConnectionException();
+            });
+            fail("Expected DictConnectionException");
+        } catch (DictConnectionException e) {
+            /* Expected */
+        }
+        assertEquals("result", cache.get("host:2628", BANNER, "databases",
+                                         0, () -> "result"));
+    }
+
+    @Test
+    public void testTtl() throws IOException {
+        MetadataCache cache = new MetadataCache.Builder().setTtl(0).build();
+        cache.get("host:2628", BANNER, "databases", 0, () -> "old");
+        assertEquals("new", cache.get("host:2628", BANNER, "databases", 0,
+                                      () -> "new"));
+    }
+
+    @Test
+    public void testInvalidate() throws IOException {
+        MetadataCache cache = new MetadataCache();
+        cache.get("host:2628", BANNER, "databases", 0, () -> "old");
+        cache.invalidate("host", 2628);
+        assertEquals("new", cache.get("host:2628", BANNER, "databases", 0,
+                                      () -> "new"));
+    }
+
+    private static Banner banner(String text, String... capabilities) {
+        return new Banner("220 " + text, text, "<1@host>",
+                          new ArrayList<>(Arrays.asList(capabilities)));
+    }
+}
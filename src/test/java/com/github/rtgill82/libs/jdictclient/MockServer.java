@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.rtgill82.libs.jdictclient.ResponseStrings.*;
+
+/**
+ * A DICT server on the loopback interface that answers commands with
+ * canned responses.
+ * <p>
+ * Responses are looked up by the full command line first and then by the
+ * first word of the command.
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+class MockServer implements Runnable {
+    private final ServerSocket mServerSocket;
+    private final Map<String, String> mResponses = new ConcurrentHashMap<>();
+    private final Map<String, Long> mDelays = new ConcurrentHashMap<>();
+    private final Map<String, Long> mFixedDelays = new ConcurrentHashMap<>();
+    private final List<Socket> mSockets = new CopyOnWriteArrayList<>();
+    private final List<String> mCommands = new CopyOnWriteArrayList<>();
+    private final AtomicInteger mConnections = new AtomicInteger();
+    private final Thread mThread;
+    private volatile String mBanner = BANNER;
+
+    MockServer() throws IOException {
+        mServerSocket =
+          new ServerSocket(0, 1024, InetAddress.getLoopbackAddress());
+        setResponse("CLIENT", "250 ok");
+        setResponse("STATUS", "210 up 1");
+        setResponse("QUIT", "221 bye");
+        mThread = new Thread(this, "MockServer");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    String getHost() {
+        return mServerSocket.getInetAddress().getHostAddress();
+    }
+
+    int getPort() {
+        return mServerSocket.getLocalPort();
+    }
+
+    /**
+     * Set the response sent for a command.
+     *
+     * @param command the full command line or its first word
+     * @param response the response to send
+     */
+    void setResponse(String command, String response) {
+        mResponses.put(command, response);
+    }
+
+    /**
+     * Delay the response to the next matching command.
+     *
+     * @param command the full command line or its first word
+     * @param delay delay in milliseconds
+     */
+    void delayNext(String command, long delay) {
+        mDelays.put(command, delay);
+    }
+
+    /**
+     * Delay the response to every matching command.
+     *
+     * @param command the full command line or its first word
+     * @param delay delay in milliseconds
+     */
+    void setDelay(String command, long delay) {
+        mFixedDelays.put(command, delay);
+    }
+
+    void setBanner(String banner) {
+        mBanner = banner;
+    }
+
+    /** Number of connections accepted so far. */
+    int getConnectionCount() {
+        return mConnections.get();
+    }
+
+    /** Command lines received so far, in order. */
+    List<String> getCommands() {
+        return new ArrayList<>(mCommands);
+    }
+
+    /** Close every accepted connection, leaving the server listening. */
+    void dropConnections() throws IOException {
+        for (Socket socket : mSockets)
+          socket.close();
+        mSockets.clear();
+    }
+
+    void close() throws IOException {
+        mServerSocket.close();
+        try {
+            /* An accept in progress may still return one last socket. */
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dropConnections();
+    }
+
+    @Override
+    public void run() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                final Socket socket = mServerSocket.accept();
+                mConnections.incrementAndGet();
+                mSockets.add(socket);
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                }, "MockServer-" + mConnections.get());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                socket.getInputStream(), StandardCharsets.UTF_8));
+            OutputStream out = socket.getOutputStream();
+            write(out, mBanner);
+
+            String line = in.readLine();
+            while (line != null) {
+                mCommands.add(line);
+                String response = mResponses.get(line);
+                if (response == null)
+                  response = mResponses.get(line.split(" ")[0]);
+                if (response == null)
+                  response = "500 unknown command";
+                delay(line);
+                write(out, response);
+                if (line.equals("QUIT"))
+                  break;
+                line = in.readLine();
+            }
+            socket.close();
+        } catch (IOException e) {
+            /* Connection dropped by the client or by dropConnections(). */
+        }
+    }
+
+    private void delay(String line) {
+        Long delay = mDelays.remove(line);
+        if (delay == null)
+          delay = mDelays.remove(line.split(" ")[0]);
+        if (delay == null)
+          delay = mFixedDelays.get(line);
+        if (delay == null)
+          delay = mFixedDelays.get(line.split(" ")[0]);
+        if (delay == null)
+          return;
+
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void write(OutputStream out, String response)
+          throws IOException {
+        String text = response.endsWith("\n") ? response : response + "\n";
+        out.write(text.replaceAll("\r?\n", "\r\n")
+                      .getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+}
@@ -20,13 +20,10 @@
  */
 package com.github.rtgill82.libs.jdictclient;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PrintWriter;
-import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.net.InetAddress;
 import java.net.Socket;
@@ -45,7 +42,6 @@ class Mocks {
     @Mock InetAddress inetAddress;
     @Mock InputStream input;
     @Mock OutputStream output;
-    @Mock PrintWriter printWriter;
 
     @InjectMocks
     Connection connection = spy(new Connection("localhost"));
@@ -83,8 +79,7 @@ class Mocks {
     }
 
     private Connection connection(String str) {
-        when(connection.getInputReader()).thenReturn(stringReader(str));
-        when(connection.getOutputWriter()).thenReturn(printWriter);
+        when(connection.getInputReader()).thenReturn(responseReader(str));
         return connection;
     }
 
@@ -99,12 +94,10 @@ class Mocks {
     }
 
     /**
-     * Create BufferedReader for a String.
+     * Create ResponseReader for a String.
      */
-    private BufferedReader stringReader(String str) {
-        StringReader sreader = new StringReader(str);
-        BufferedReader breader = new BufferedReader(sreader);
-        return breader;
+    private ResponseReader responseReader(String str) {
+        return new ResponseReader(stringStream(str));
     }
 
     /**
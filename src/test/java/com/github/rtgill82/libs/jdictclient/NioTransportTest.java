@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static com.github.rtgill82.libs.jdictclient.Command.Type.*;
+import static com.github.rtgill82.libs.jdictclient.ResponseStrings.*;
+
+/**
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class NioTransportTest {
+    private MockServer mServer;
+    private NioTransport mTransport;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockServer();
+        mServer.setResponse("SHOW DATABASES", DATABASES);
+        mServer.setResponse("SHOW STRATEGIES", STRATEGIES);
+        mServer.setResponse("DEFINE", DEFINITION);
+        mTransport = new NioTransport();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mTransport.close();
+        mServer.close();
+    }
+
+    @Test
+    public void testConnect() throws Exception {
+        NioConnection connection = connect();
+        assertEquals("<100@dictd.org>", connection.getId());
+        assertEquals(BANNER, connection.getBanner().message);
+    }
+
+    @Test
+    public void testSend() throws Exception {
+        NioConnection connection = connect();
+        Command command = new Command.Builder(SHOW_DATABASES).build();
+        List<Response> responses = get(connection.send(command));
+        assertEquals(2, responses.size());
+        assertEquals(110, responses.get(0).getStatus());
+        List<Database> databases = (List<Database>) responses.get(0).getData();
+        assertEquals("foldoc", databases.get(0).getName());
+    }
+
+    @Test
+    public void testPipelinedSends() throws Exception {
+        NioConnection connection = connect();
+        List<CompletableFuture<List<Response>>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Command command = new Command.Builder(i % 2 == 0
+                                                  ? SHOW_STRATEGIES : DEFINE)
+                                         .setParamString("word")
+                                         .build();
+            futures.add(connection.send(command));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            List<Response> responses = get(futures.get(i));
+            if (i % 2 == 0) {
+                assertEquals(111, responses.get(0).getStatus());
+            } else {
+                assertEquals(150, responses.get(0).getStatus());
+                assertEquals(151, responses.get(1).getStatus());
+                Definition definition =
+                  (Definition) responses.get(1).getData();
+                assertEquals("word", definition.getWord());
+            }
+        }
+    }
+
+    @Test
+    public void testLargeResponse() throws Exception {
+        StringBuilder response = new StringBuilder("152 10000 matches\n");
+        for (int i = 0; i < 10000; i++)
+          response.append("wn \"word").append(i).append("\"\n");
+        response.append(".\n250 ok");
+        mServer.setResponse("MATCH", response.toString());
+
+        NioConnection connection = connect();
+        Command command = new Command.Builder(Command.Type.MATCH)
+                                     .setStrategy("prefix")
+                                     .setParamString("word")
+                                     .build();
+        List<Response> responses = get(connection.send(command));
+        assertEquals(10000, ((List<?>) responses.get(0).getData()).size());
+
+        command = new Command.Builder(SHOW_DATABASES).build();
+        responses = get(connection.send(command));
+        assertEquals(110, responses.get(0).getStatus());
+    }
+
+    @Test
+    public void testMaxResponseSize() throws Exception {
+        NioConnection connection = connect();
+        connection.setMaxResponseSize(32);
+        Command command = new Command.Builder(SHOW_DATABASES).build();
+        try {
+            get(connection.send(command));
+            fail("DictException expected");
+        } catch (ExecutionException e) {
+            assertEquals(DictException.class, e.getCause().getClass());
+        }
+        assertTrue(connection.isClosed());
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        mServer.delayNext("DEFINE", 2000);
+        NioConnection connection = connect();
+        Command command = new Command.Builder(DEFINE)
+                                     .setParamString("word")
+                                     .setDeadline(200)
+                                     .build();
+        try {
+            get(connection.send(command));
+            fail("DictTimeoutException expected");
+        } catch (ExecutionException e) {
+            assertEquals(DictTimeoutException.class, e.getCause().getClass());
+        }
+        assertTrue(connection.isClosed());
+    }
+
+    @Test
+    public void testConnectTimeout() throws Exception {
+        /* Accepted by the kernel but never answered with a banner. */
+        ServerSocket socket =
+          new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        try {
+            get(mTransport.connect(socket.getInetAddress().getHostAddress(),
+                                   socket.getLocalPort(), 200));
+            fail("DictTimeoutException expected");
+        } catch (ExecutionException e) {
+            assertEquals(DictTimeoutException.class, e.getCause().getClass());
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testConnectionDropped() throws Exception {
+        NioConnection connection = connect();
+        mServer.dropConnections();
+        Command command = new Command.Builder(SHOW_DATABASES).build();
+        try {
+            get(connection.send(command));
+            fail("DictConnectionException expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void testServerUnavailable() throws Exception {
+        mServer.setBanner(UNAVAILABLE);
+        try {
+            connect();
+            fail("DictServerException expected");
+        } catch (ExecutionException e) {
+            assertEquals(DictServerException.class, e.getCause().getClass());
+        }
+    }
+
+    private NioConnection connect() throws Exception {
+        return get(mTransport.connect(mServer.getHost(), mServer.getPort()));
+    }
+
+    private static <T> T get(CompletableFuture<T> future) throws Exception {
+        return future.get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class ReconnectPolicyTest {
+    @Test
+    public void testDelayBounds() {
+        ReconnectPolicy policy = new ReconnectPolicy(10, 100, 1000);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(policy.getDelay(0) <= 100);
+            assertTrue(policy.getDelay(2) <= 400);
+            assertTrue(policy.getDelay(4) <= 1000);
+            assertTrue(policy.getDelay(100) <= 1000);
+            assertTrue(policy.getDelay(100) >= 0);
+        }
+    }
+
+    @Test
+    public void testDefaults() {
+        ReconnectPolicy policy = new ReconnectPolicy();
+        assertEquals(ReconnectPolicy.DEFAULT_MAX_RETRIES,
+                     policy.getMaxRetries());
+        assertTrue(policy.getDelay(0) <= ReconnectPolicy.DEFAULT_INITIAL_DELAY);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class RequestCoalescerTest {
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        Future<String> first = executor.submit(() ->
+            coalescer.execute("key", "host", 0, () -> {
+                loads.incrementAndGet();
+                await(release);
+                return "result";
+            }));
+        waitForInFlight(coalescer);
+
+        ArrayList<Future<String>> others = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            others.add(executor.submit(() ->
+                coalescer.execute("key", "host", 0, () -> {
+                    loads.incrementAndGet();
+                    return "other";
+                })));
+        }
+        Thread.sleep(100);
+        release.countDown();
+
+        assertEquals("result", first.get(5, TimeUnit.SECONDS));
+        for (Future<String> other : others)
+          assertEquals("result", other.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+        assertEquals(0, coalescer.getInFlightCount());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSharedException() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        Future<String> first = executor.submit(() ->
+            coalescer.execute("key", "host", 0, () -> {
+                await(release);
+                throw new DictConnectionException();
+            }));
+        waitForInFlight(coalescer);
+        Future<String> second = executor.submit(() ->
+            coalescer.execute("key", "host", 0, () -> "other"));
+        Thread.sleep(100);
+        release.countDown();
+
+        assertFailed(first, DictConnectionException.class);
+        assertFailed(second, DictCoalescedException.class);
+        try {
+            second.get();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getCause()
+                       instanceof DictConnectionException);
+        }
+        assertEquals("result", coalescer.execute("key", "host", 0,
+                                                 () -> "result"));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testDistinctKeys() throws IOException {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        assertEquals("a", coalescer.execute("a", "host", 0, () -> "a"));
+        assertEquals("b", coalescer.execute("b", "host", 0, () -> "b"));
+        assertEquals("c", coalescer.execute("a", "host", 0, () -> "c"));
+    }
+
+    @Test
+    public void testSharedRejection() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        Future<String> first = executor.submit(() ->
+            coalescer.execute("key", "host", 0, () -> {
+                await(release);
+                throw new DictException("host", 550, "invalid database");
+            }));
+        waitForInFlight(coalescer);
+        Future<String> second = executor.submit(() ->
+            coalescer.execute("key", "host", 0, () -> "other"));
+        Thread.sleep(100);
+        release.countDown();
+
+        assertFailed(first, DictException.class);
+        assertFailed(second, DictException.class);
+        executor.shutdown();
+    }
+
+    @Test
+    public void testAsyncRequests() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        AtomicInteger starts = new AtomicInteger();
+        CompletableFuture<List<String>> result = new CompletableFuture<>();
+
+        CompletableFuture<List<String>> first =
+          coalescer.executeAsync("key", "host", () -> {
+              starts.incrementAndGet();
+              return result;
+          });
+        CompletableFuture<List<String>> second =
+          coalescer.executeAsync("key", "host", () -> {
+              starts.incrementAndGet();
+              return new CompletableFuture<>();
+          });
+        assertFalse(second.isDone());
+
+        result.complete(new ArrayList<>(Arrays.asList("word")));
+        assertEquals(Arrays.asList("word"), first.get(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("word"), second.get(5, TimeUnit.SECONDS));
+        assertNotSame(first.get(), second.get());
+        assertEquals(1, starts.get());
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    private static void assertFailed(Future<String> future,
+                                     Class<?> expected)
+          throws InterruptedException {
+        try {
+            future.get();
+            fail("Expected " + expected.getSimpleName());
+        } catch (ExecutionException e) {
+            assertEquals(expected, e.getCause().getClass());
+        }
+    }
+
+    private static void waitForInFlight(RequestCoalescer coalescer)
+          throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (coalescer.getInFlightCount() == 0
+               && System.nanoTime() - end < 0)
+          Thread.sleep(1);
+        assertEquals(1, coalescer.getInFlightCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -22,7 +22,10 @@ package com.github.rtgill82.libs.jdictclient;
 
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 import static org.junit.Assert.*;
 import static com.github.rtgill82.libs.jdictclient.Mocks.*;
@@ -250,4 +253,101 @@ public class ResponseParserTest {
             fail("IOException: " + e.getMessage());
         }
     }
+
+    @Test
+    public void testElementFactory() throws IOException {
+        ResponseReader reader = new ResponseReader(new ByteArrayInputStream(
+            MATCH.getBytes(StandardCharsets.UTF_8)));
+        ResponseParser parser = new ResponseParser("localhost", reader, 1);
+        parser.setElementFactory(152, (database, word) ->
+            new Match(database.toUpperCase(), word));
+
+        Response resp = parser.parse();
+        List<Match> matches = (List<Match>) resp.getData();
+        assertEquals(1, matches.size());
+        assertEquals("WN", matches.get(0).getDatabase());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testElementFactoryInvalidCode() {
+        ResponseReader reader = new ResponseReader(new byte[0]);
+        new ResponseParser("localhost", reader, 1)
+          .setElementFactory(151, ElementFactory.MATCH);
+    }
+
+    @Test
+    public void testLazyData() throws IOException {
+        ResponseReader reader = new ResponseReader(new ByteArrayInputStream(
+            MATCH.getBytes(StandardCharsets.UTF_8)));
+        ResponseParser parser = new ResponseParser("localhost", reader, 1);
+        int[] created = new int[1];
+        parser.setElementFactory(152, (database, word) -> {
+            created[0] += 1;
+            return new Match(database, word);
+        });
+
+        Response resp = parser.parse();
+        assertNotNull(resp.getRawData());
+        assertEquals(0, created[0]);
+        assertSame(resp.getData(), resp.getData());
+        assertEquals(1, created[0]);
+        assertNotNull(resp.getRawData());
+    }
+
+    @Test
+    public void testReleaseRawData() throws IOException {
+        ResponseReader reader = new ResponseReader(new ByteArrayInputStream(
+            MATCH.getBytes(StandardCharsets.UTF_8)));
+        ResponseParser parser = new ResponseParser("localhost", reader, 1);
+        parser.setRetainRawData(false);
+
+        Response resp = parser.parse();
+        assertNotNull(resp.getRawData());
+        assertEquals(1, ((List<Match>) resp.getData()).size());
+        assertNull(resp.getRawData());
+    }
+
+    @Test
+    public void testReset() throws IOException {
+        ResponseReader reader = new ResponseReader(new ByteArrayInputStream(
+            "210 status\r\n250 ok\r\n".getBytes(StandardCharsets.UTF_8)));
+        ResponseParser parser = new ResponseParser("localhost", reader, 1);
+        assertEquals(210, parser.parse().getStatus());
+        assertFalse(parser.hasNext());
+
+        parser.reset(1);
+        assertTrue(parser.hasNext());
+        Response resp = parser.parse();
+        assertEquals(250, resp.getStatus());
+        assertEquals("ok", resp.getText());
+        assertFalse(parser.hasNext());
+    }
+
+    @Test(expected = DictException.class)
+    public void testShortStatusLine() throws IOException {
+        ResponseReader reader = new ResponseReader(new ByteArrayInputStream(
+            "25\r\n".getBytes(StandardCharsets.UTF_8)));
+        new ResponseParser("localhost", reader, 1).parse();
+    }
+
+    @Test
+    public void testSharedDatabase() throws IOException {
+        String definitions =
+            "151 \"one\" wn \"WordNet\"\nfirst\n.\r\n" +
+            "151 \"two\" wn \"WordNet\"\nsecond\n.\r\n" +
+            "152 2 matches\r\nwn \"one\"\r\nwn \"two\"\r\n.\r\n" +
+            "250 ok\r\n";
+        ResponseReader reader = new ResponseReader(new ByteArrayInputStream(
+            definitions.getBytes(StandardCharsets.UTF_8)));
+        ResponseParser parser = new ResponseParser("localhost", reader, 1);
+
+        Definition first = (Definition) parser.parse().getData();
+        Definition second = (Definition) parser.parse().getData();
+        List<Match> matches = (List<Match>) parser.parse().getData();
+        assertSame(first.getDatabase(), second.getDatabase());
+        assertSame(first.getDatabase().getName(),
+                   matches.get(0).getDatabase());
+        assertSame(matches.get(0).getDatabase(),
+                   matches.get(1).getDatabase());
+    }
 }
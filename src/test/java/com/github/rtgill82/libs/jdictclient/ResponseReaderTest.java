@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class ResponseReaderTest {
+    @Test
+    public void testReadLine() throws IOException {
+        ResponseReader reader = reader("250 ok\r\n220 hello\n", 4);
+        assertEquals("250 ok", reader.readLine());
+        assertEquals("220 hello", reader.readLine());
+        assertNull(reader.readLine());
+    }
+
+    @Test
+    public void testReadTextBlock() throws IOException {
+        ResponseReader reader =
+          reader("line one\r\n..dot\r\n.\r\n\r\n.\r\n250 ok\r\n", 3);
+        assertEquals("line one\n.dot\n", reader.readTextBlock());
+        assertEquals("\n", reader.readTextBlock());
+        assertEquals("250 ok", reader.readLine());
+    }
+
+    @Test
+    public void testTransferTextBlock() throws IOException {
+        ResponseReader reader =
+          reader("line one\r\n..dot\r\n.\r\n250 ok\r\n", 3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(14, reader.transferTextBlock(out));
+        assertEquals("line one\n.dot\n", out.toString("UTF-8"));
+        assertEquals("250 ok", reader.readLine());
+    }
+
+    @Test
+    public void testSkipTextBlock() throws IOException {
+        for (int size = 1; size <= 8; size++) {
+            ResponseReader reader = reader(
+                "one\r\n.\r\r\n..\r\n.x\n\r\n.\r\n250 ok\r\n" +
+                "\n.\n251 ok\r\n", size);
+            reader.skipTextBlock();
+            assertEquals("250 ok", reader.readLine());
+            reader.skipTextBlock();
+            assertEquals("251 ok", reader.readLine());
+        }
+    }
+
+    @Test
+    public void testUtf8TextBlock() throws IOException {
+        ResponseReader reader = reader("caf\u00e9 \u2014 \u65e5\r\n.\r\n", 5);
+        assertEquals("caf\u00e9 \u2014 \u65e5\n", reader.readTextBlock());
+    }
+
+    @Test
+    public void testLargeTextBlock() throws IOException {
+        StringBuilder text = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            text.append(".. line ").append(i).append("\r\n");
+            expected.append(". line ").append(i).append("\n");
+        }
+        text.append(".\r\n250 ok\r\n");
+        ResponseReader reader = reader(text.toString(), 1024);
+        assertEquals(expected.toString(), reader.readTextBlock());
+        assertTrue(reader.getTextCapacity()
+                   <= ResponseReader.MAX_RETAINED_TEXT_SIZE);
+        assertEquals("250 ok", reader.readLine());
+    }
+
+    @Test(expected = DictConnectionException.class)
+    public void testUnterminatedTextBlock() throws IOException {
+        reader("no terminator\r\n", 16).readTextBlock();
+    }
+
+    @Test
+    public void testByteArray() throws IOException {
+        byte[] data = "151 x\r\ntext\r\n.\r\n".getBytes(StandardCharsets.UTF_8);
+        ResponseReader reader = new ResponseReader(data);
+        assertEquals("151 x", reader.readLine());
+        assertEquals("text\n", reader.readTextBlock());
+        assertNull(reader.readLine());
+    }
+
+    private static ResponseReader reader(String text, int bufferSize) {
+        InputStream in =
+          new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+        return new ResponseReader(in, bufferSize);
+    }
+}
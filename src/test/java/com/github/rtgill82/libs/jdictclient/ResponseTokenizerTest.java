@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import org.junit.Test;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the tokenizer against the regular expressions it replaced.
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class ResponseTokenizerTest {
+    private static final Pattern ELEMENT =
+      Pattern.compile("^([^\000-\037 '\"\\\\]+) \"(.+)\"$");
+    private static final Pattern DEFINITION =
+      Pattern.compile("^151 \"(.+)\" ([^\000-\037 '\"\\\\]+) \"(.+)\"$");
+    private static final Pattern BANNER =
+      Pattern.compile("^220 (.*) <((\\w+\\.?)+)> (<.*>)$");
+
+    @Test
+    public void testSplitElement() {
+        String[] lines = {
+            "foldoc \"The Free On-line Dictionary\"",
+            "exact \"Match headwords exactly\"",
+            "db \"a \"quoted\" value\"",
+            "db \"\"",
+            "db \"x\"",
+            "db\"x\"",
+            "d'b \"x\"",
+            " db \"x\"",
+            "db x",
+            "db \"unterminated",
+            ""
+        };
+        for (String line : lines) {
+            Matcher matcher = ELEMENT.matcher(line);
+            String[] parts =
+              ResponseTokenizer.splitElement(line, 0, line.length());
+            if (matcher.find()) {
+                assertArrayEquals(line, groups(matcher, 1, 2), parts);
+            } else {
+                assertNull(line, parts);
+            }
+        }
+    }
+
+    @Test
+    public void testSplitElementRange() {
+        String text = "a \"b\"\nkey \"value\"\n";
+        assertArrayEquals(new String[] { "key", "value" },
+                          ResponseTokenizer.splitElement(text, 6, 17));
+    }
+
+    @Test
+    public void testSplitDefinition() {
+        String[] lines = {
+            "151 \"word\" database \"Database Description\"",
+            "151 \"say \"hi\" db\" gcide \"Collaborative \"GCIDE\"\"",
+            "151 \"w\" db \"d\"",
+            "151 \"\" db \"d\"",
+            "151 \"w\" db \"\"",
+            "151 \"w\" d b \"d\"",
+            "151 word db \"d\"",
+            "150 \"w\" db \"d\""
+        };
+        for (String line : lines) {
+            Matcher matcher = DEFINITION.matcher(line);
+            String[] parts = ResponseTokenizer.splitDefinition(line);
+            if (matcher.find()) {
+                assertArrayEquals(line, groups(matcher, 1, 2, 3), parts);
+            } else {
+                assertNull(line, parts);
+            }
+        }
+    }
+
+    @Test
+    public void testSplitBanner() {
+        String[] lines = {
+            "220 dictd 1.12 <auth.mime> <100@dictd.org>",
+            "220 text <with> <angles> <mime> <1@host>",
+            "220  <auth> <1@host>",
+            "220 dictd <auth..mime> <1@host>",
+            "220 dictd <auth.> <1@host>",
+            "220 dictd <> <1@host>",
+            "220 dictd <auth><1@host>",
+            "221 dictd <auth> <1@host>"
+        };
+        for (String line : lines) {
+            Matcher matcher = BANNER.matcher(line);
+            String[] parts = ResponseTokenizer.splitBanner(line);
+            if (matcher.find()) {
+                assertEquals(line, matcher.group(1), parts[0]);
+                assertEquals(line, matcher.group(4), parts[1]);
+                String[] caps = matcher.group(2).split("\\.");
+                assertEquals(line, caps.length, parts.length - 2);
+                for (int i = 0; i < caps.length; i++)
+                  assertEquals(line, caps[i], parts[i + 2]);
+            } else {
+                assertNull(line, parts);
+            }
+        }
+    }
+
+    private static String[] groups(Matcher matcher, int... groups) {
+        String[] values = new String[groups.length];
+        for (int i = 0; i < groups.length; i++)
+          values[i] = matcher.group(groups[i]);
+        return values;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+import static com.github.rtgill82.libs.jdictclient.ResponseStrings.*;
+
+/**
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+public class ServerGroupTest {
+    private MockServer mGood;
+    private MockServer mBad;
+    private ServerGroup mGroup;
+
+    @Before
+    public void setUp() throws IOException {
+        mGood = new MockServer();
+        mGood.setResponse("DEFINE", DEFINITION);
+        mBad = new MockServer();
+        mBad.setResponse("DEFINE", SHUTDOWN);
+        mBad.setResponse("STATUS", SHUTDOWN);
+        mGroup = new ServerGroup.Builder()
+                                .addServer(mGood.getHost(), mGood.getPort())
+                                .addServer(mBad.getHost(), mBad.getPort())
+                                .setProbeInterval(20)
+                                .build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mGroup.close();
+        mGood.close();
+        mBad.close();
+    }
+
+    @Test
+    public void testFailover() throws IOException {
+        for (int i = 0; i < 20; i++)
+          assertEquals(1, mGroup.define("word").size());
+        assertEquals(1, mGroup.getAvailableServers().size());
+        assertEquals(mGood.getHost() + ":" + mGood.getPort(),
+                     mGroup.getAvailableServers().get(0));
+    }
+
+    @Test
+    public void testReadmitAfterProbe() throws Exception {
+        for (int i = 0; i < 20; i++)
+          mGroup.define("word");
+        assertEquals(1, mGroup.getAvailableServers().size());
+
+        mBad.setResponse("DEFINE", DEFINITION);
+        mBad.setResponse("STATUS", "210 up 1");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mGroup.getAvailableServers().size() < 2
+               && System.currentTimeMillis() < deadline)
+          Thread.sleep(10);
+        assertEquals(2, mGroup.getAvailableServers().size());
+    }
+
+    @Test
+    public void testRequestErrorIsNotFailover() throws IOException {
+        mGood.setResponse("MATCH", "550 invalid database");
+        mBad.setResponse("MATCH", "550 invalid database");
+        try {
+            mGroup.match("word", "exact", "none");
+            fail("DictSyntaxException expected");
+        } catch (DictSyntaxException e) {
+            assertEquals(2, mGroup.getAvailableServers().size());
+        }
+    }
+
+    @Test
+    public void testNoServersAvailable() throws IOException {
+        mGood.close();
+        try {
+            for (int i = 0; i < 20; i++)
+              mGroup.define("word");
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertTrue(mGroup.getAvailableServers().isEmpty());
+        }
+    }
+
+    @Test
+    public void testPoolTimeoutIsNotFailover() throws IOException {
+        JDictClientPool pool = new JDictClientPool.Builder()
+                                   .setMaxConnectionsPerHost(1)
+                                   .setMaxWait(100)
+                                   .build();
+        ServerGroup group = new ServerGroup.Builder()
+                                .addServer(mGood.getHost(), mGood.getPort())
+                                .setPool(pool)
+                                .build();
+        JDictClient busy = pool.acquire(mGood.getHost(), mGood.getPort());
+        try {
+            group.define("word");
+            fail("DictPoolTimeoutException expected");
+        } catch (DictPoolTimeoutException e) {
+            assertEquals(1, group.getAvailableServers().size());
+        }
+
+        pool.release(busy);
+        assertEquals(1, group.define("word").size());
+        group.close();
+        pool.close();
+    }
+}
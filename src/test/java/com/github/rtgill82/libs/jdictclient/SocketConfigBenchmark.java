@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.io.IOException;
+
+import static com.github.rtgill82.libs.jdictclient.ResponseStrings.*;
+
+/**
+ * Measures the effect of each ConnectionConfig setting over loopback.
+ * <p>
+ * Each setting is changed on its own from the defaults. For every
+ * configuration the harness times a run of single DEFINE lookups, which
+ * shows per-command latency, and a run of large MATCH responses, which
+ * shows buffer effects. The best of several rounds is reported. Loopback
+ * has no real round trip, so the figures are a lower bound on what a
+ * remote server would show. Not run as part of the test suite.
+ * <p>
+ * Usage: SocketConfigBenchmark [lookups [matches]]
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+class SocketConfigBenchmark {
+    private static final int DEFAULT_LOOKUPS = 5000;
+    private static final int DEFAULT_MATCHES = 20000;
+    private static final int MATCH_RUNS = 20;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int lookups = args.length > 0 ?
+          Integer.parseInt(args[0]) : DEFAULT_LOOKUPS;
+        int matches = args.length > 1 ?
+          Integer.parseInt(args[1]) : DEFAULT_MATCHES;
+
+        MockServer server = new MockServer();
+        server.setResponse("DEFINE", DEFINITION);
+        server.setResponse("MATCH", matchResponse(matches));
+        System.out.printf("%d DEFINE lookups, %d x MATCH of %d lines%n",
+                          lookups, MATCH_RUNS, matches);
+        try {
+            run("default", server, lookups, new ConnectionConfig.Builder());
+            run("nodelay on", server, lookups,
+                new ConnectionConfig.Builder().setTcpNoDelay(true));
+            run("nodelay on, autoflush", server, lookups,
+                new ConnectionConfig.Builder().setTcpNoDelay(true)
+                                              .setAutoFlush(true));
+            run("autoflush", server, lookups,
+                new ConnectionConfig.Builder().setAutoFlush(true));
+            run("keepalive", server, lookups,
+                new ConnectionConfig.Builder().setKeepAlive(true));
+            run("send buffer 4K", server, lookups,
+                new ConnectionConfig.Builder().setSendBufferSize(4096));
+            run("receive buffer 4K", server, lookups,
+                new ConnectionConfig.Builder().setReceiveBufferSize(4096));
+            run("receive buffer 256K", server, lookups,
+                new ConnectionConfig.Builder()
+                                    .setReceiveBufferSize(262144));
+            run("reader buffer 512", server, lookups,
+                new ConnectionConfig.Builder().setReaderBufferSize(512));
+            run("reader buffer 64K", server, lookups,
+                new ConnectionConfig.Builder().setReaderBufferSize(65536));
+        } finally {
+            server.close();
+        }
+    }
+
+    private static void run(String name, MockServer server, int lookups,
+                            ConnectionConfig.Builder builder)
+          throws IOException {
+        Connection connection = new Connection(server.getHost(),
+            server.getPort(), Connection.DEFAULT_TIMEOUT, builder.build());
+        JDictClient client = new JDictClient(connection);
+        client.connect();
+        try {
+            /* Report the best round, so JIT warm-up and GC pauses from
+             * earlier configurations do not count against this one. */
+            long define = Long.MAX_VALUE;
+            long match = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < lookups; i++)
+                  client.define("word");
+                define = Math.min(define,
+                                  (System.nanoTime() - start) / lookups);
+
+                start = System.nanoTime();
+                for (int i = 0; i < MATCH_RUNS; i++)
+                  client.match("word", "prefix");
+                match = Math.min(match,
+                                 (System.nanoTime() - start) / MATCH_RUNS);
+            }
+
+            System.out.printf("%-24s  %6.1f us/define  %6d us/match%n",
+                              name, define / 1000.0, match / 1000);
+        } finally {
+            client.close();
+        }
+    }
+
+    private static String matchResponse(int matches) {
+        StringBuilder response = new StringBuilder();
+        response.append("152 ").append(matches).append(" matches found\n");
+        for (int i = 0; i < matches; i++)
+          response.append("wn \"word").append(i).append("\"\n");
+        response.append(".\n250 ok");
+        return response.toString();
+    }
+}
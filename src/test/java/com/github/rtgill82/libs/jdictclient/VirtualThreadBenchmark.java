@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2018 Robert Gill <rtgill82@gmail.com>
+ *
+ * This file is part of jdict-client.
+ *
+ * jdict-client is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * jdict-client is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with jdict-client.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.github.rtgill82.libs.jdictclient;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.github.rtgill82.libs.jdictclient.ResponseStrings.*;
+
+/**
+ * Compares AsyncJDictClient on virtual threads with the default fixed
+ * platform-thread pool.
+ * <p>
+ * Each run sends a burst of DEFINE lookups to a MockServer that delays
+ * every response, and reports the elapsed time, throughput and peak number
+ * of live threads. The peak includes MockServer's thread for each
+ * connection. Not run as part of the test suite.
+ * <p>
+ * Usage: VirtualThreadBenchmark [lookups [connections [delay]]]
+ *
+ * @author Robert Gill &lt;rtgill82@gmail.com&gt;
+ *
+ */
+class VirtualThreadBenchmark {
+    private static final int DEFAULT_LOOKUPS = 2000;
+    private static final int DEFAULT_CONNECTIONS = 64;
+    private static final long DEFAULT_DELAY = 10;
+    private static final long MAX_WAIT = 60000;
+
+    public static void main(String[] args) throws Exception {
+        int lookups = args.length > 0 ?
+          Integer.parseInt(args[0]) : DEFAULT_LOOKUPS;
+        int connections = args.length > 1 ?
+          Integer.parseInt(args[1]) : DEFAULT_CONNECTIONS;
+        long delay = args.length > 2 ?
+          Long.parseLong(args[2]) : DEFAULT_DELAY;
+
+        MockServer server = new MockServer();
+        server.setResponse("DEFINE", DEFINITION);
+        server.setDelay("DEFINE", delay);
+        System.out.printf("%d lookups, %d connections, %d ms delay%n",
+                          lookups, connections, delay);
+        try {
+            run("platform", server, lookups, connections, false);
+            run("virtual", server, lookups, connections, true);
+        } finally {
+            server.close();
+        }
+    }
+
+    private static void run(String name, MockServer server, int lookups,
+                            int connections, boolean virtualThreads)
+          throws Exception {
+        JDictClientPool pool = new JDictClientPool.Builder()
+            .setMaxConnectionsPerHost(connections)
+            .setMaxWait(MAX_WAIT)
+            .build();
+        AsyncJDictClient.Builder builder =
+          new AsyncJDictClient.Builder(server.getHost())
+                              .setPort(server.getPort())
+                              .setPool(pool);
+        if (virtualThreads)
+          builder.useVirtualThreads();
+
+        AsyncJDictClient client;
+        try {
+            client = builder.build();
+        } catch (UnsupportedOperationException e) {
+            System.out.printf("%-8s  unavailable on Java %s%n", name,
+                              System.getProperty("java.version"));
+            pool.close();
+            return;
+        }
+
+        try {
+            /* Warm up the connections and the JIT before timing. */
+            burst(client, connections);
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            threads.resetPeakThreadCount();
+            long start = System.nanoTime();
+            burst(client, lookups);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("%-8s  %6d ms  %8.1f lookups/s  "
+                              + "%4d peak threads%n", name,
+                              elapsed / 1000000,
+                              lookups * 1e9 / elapsed,
+                              threads.getPeakThreadCount());
+        } finally {
+            client.close();
+            pool.close();
+        }
+    }
+
+    private static void burst(AsyncJDictClient client, int lookups)
+          throws Exception {
+        List<CompletableFuture<List<Definition>>> futures =
+          new ArrayList<>(lookups);
+        for (int i = 0; i < lookups; i++)
+          futures.add(client.defineAsync("word" + i));
+        for (CompletableFuture<List<Definition>> future : futures)
+          future.get();
+    }
+}